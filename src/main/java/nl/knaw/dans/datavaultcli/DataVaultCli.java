@@ -29,9 +29,15 @@ import nl.knaw.dans.datavaultcli.command.ConsistencyCheckGet;
 import nl.knaw.dans.datavaultcli.command.ConsistencyCheckNew;
 import nl.knaw.dans.datavaultcli.command.CopyBatch;
 import nl.knaw.dans.datavaultcli.command.Import;
+import nl.knaw.dans.datavaultcli.command.ImportArea;
+import nl.knaw.dans.datavaultcli.command.ImportAreaFixPermissions;
 import nl.knaw.dans.datavaultcli.command.ImportCleanup;
 import nl.knaw.dans.datavaultcli.command.ImportStart;
 import nl.knaw.dans.datavaultcli.command.ImportStatus;
+import nl.knaw.dans.datavaultcli.command.ImportTop;
+import nl.knaw.dans.datavaultcli.command.ImportValidate;
+import nl.knaw.dans.datavaultcli.command.ImportWait;
+import nl.knaw.dans.datavaultcli.command.ImportWatch;
 import nl.knaw.dans.datavaultcli.command.Layer;
 import nl.knaw.dans.datavaultcli.command.LayerArchive;
 import nl.knaw.dans.datavaultcli.command.Itemstore;
@@ -144,7 +150,11 @@ public class DataVaultCli extends AbstractCommandLineApp<DataVaultConfiguration>
         commandLine
             .addSubcommand(new CommandLine(new Import())
                 .addSubcommand(new ImportStart(this))
+                .addSubcommand(new ImportValidate(this))
                 .addSubcommand(new ImportStatus(this))
+                .addSubcommand(new ImportWait(this))
+                .addSubcommand(new ImportTop(this))
+                .addSubcommand(new ImportWatch(this))
                 .addSubcommand(new ImportCleanup(this)))
             .addSubcommand(new CommandLine(new Layer())
                 .addSubcommand(new LayerNew(this))
@@ -159,6 +169,8 @@ public class DataVaultCli extends AbstractCommandLineApp<DataVaultConfiguration>
                 .addSubcommand(new ItemstoreCopyFileInto(this))
                 .addSubcommand(new ItemstoreCopyFileOutOf(this)))
             .addSubcommand(new CopyBatch(this))
+            .addSubcommand(new CommandLine(new ImportArea())
+                .addSubcommand(new ImportAreaFixPermissions(this)))
             .addSubcommand(new CommandLine(new ConsistencyCheck())
                 .addSubcommand(new ConsistencyCheckNew(this))
                 .addSubcommand(new ConsistencyCheckGet(this)))
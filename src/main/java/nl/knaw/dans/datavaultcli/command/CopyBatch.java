@@ -15,119 +15,479 @@
  */
 package nl.knaw.dans.datavaultcli.command;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.dropwizard.util.DataSize;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import nl.knaw.dans.datavaultcli.Context;
 import nl.knaw.dans.datavaultcli.config.ImportAreaConfig;
-import org.apache.commons.io.FileUtils;
+import nl.knaw.dans.datavaultcli.core.ArchiveFormat;
+import nl.knaw.dans.datavaultcli.core.BatchCopier;
+import nl.knaw.dans.datavaultcli.core.BatchVerifier;
+import nl.knaw.dans.datavaultcli.core.ChecksumAlgorithm;
+import nl.knaw.dans.datavaultcli.core.ChecksumManifest;
+import nl.knaw.dans.datavaultcli.core.CopyJournal;
+import nl.knaw.dans.datavaultcli.core.CopyPlan;
+import nl.knaw.dans.datavaultcli.core.CopyStatistics;
+import nl.knaw.dans.datavaultcli.core.DedupIndex;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter.Submission;
+import nl.knaw.dans.datavaultcli.core.ProgressMonitor;
+import nl.knaw.dans.datavaultcli.core.ProgressMonitor.Progress;
+import nl.knaw.dans.datavaultcli.core.Throttle;
+import nl.knaw.dans.datavaultcli.core.TransferMode;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
 import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Command(name = "copy-batch",
          mixinStandardHelpOptions = true,
-         description = "Copies a batch from source to target, setting the permissions as specified in the configuration.")
+         description = "Copies a batch from source to target, setting the permissions as specified in the configuration. The source may also be a .tar, .tar.gz, .tgz or .zip file, "
+             + "which is then extracted into the target.")
 @RequiredArgsConstructor
 public class CopyBatch implements Callable<Integer> {
     private final Context context;
 
-    @Parameters(index = "0", paramLabel = "source", description = "The path to the batch to copy.")
+    @Parameters(index = "0", paramLabel = "source", description = "The path to the batch to copy, or to an archive containing the contents of the batch.")
     private Path source;
 
     @Parameters(index = "1", paramLabel = "target", description = "The path to the destination inside import area of the vault.")
     private Path target;
 
+    @Option(names = { "-t", "--threads" },
+            description = "The number of threads to copy files with. Default: the number of available processors.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = { "--transfer" },
+            paramLabel = "auto|stream|channel|reflink|hardlink|move",
+            description = "How to transfer the files: 'stream' copies through the JVM, 'channel' lets the kernel copy, 'reflink' creates copy-on-write clones where the file system "
+                + "supports it, 'hardlink' links to the source files (which then get the configured file mode as well) and 'move' renames the source files. 'auto' uses 'channel' "
+                + "if source and target are on the same file system and 'stream' otherwise. Default: ${DEFAULT-VALUE}",
+            defaultValue = "auto")
+    private String transfer;
+
+    @Option(names = { "--resume" },
+            description = "Resume an interrupted copy into the same target. Files and directories that were completed according to the journal in the target are skipped; "
+                + "everything else is copied again.")
+    private boolean resume;
+
+    @Option(names = { "-i", "--incremental" },
+            description = "Copy into an existing target, copying only files that are missing or differ in size or last modified time, and removing files and directories that "
+                + "are not in the source.")
+    private boolean incremental;
+
+    @Option(names = { "-c", "--checksum" },
+            description = "With --incremental, compare the checksums of files with the same size instead of their last modified times.")
+    private boolean checksum;
+
+    @Option(names = { "-m", "--manifest" },
+            split = ",",
+            paramLabel = "md5|sha1|sha256|sha512",
+            description = "Write a manifest with the checksums of the copied files next to the target, for each of the given algorithms. The checksums are computed while copying.")
+    private List<String> manifestAlgorithms = List.of();
+
+    @Option(names = { "-s", "--staged" },
+            description = "Copy into a hidden directory next to the target and rename it to the target when the copy is complete, so that the batch appears in the import "
+                + "area atomically.")
+    private boolean staged;
+
+    @Option(names = { "-d", "--dedup" },
+            description = "Hard-link files to identical files that are already in the import area instead of copying them. The checksums of the files in the import area are "
+                + "kept in an index in its root. A linked file keeps the permissions and last modified time of the file it is linked to. Cannot be combined with --incremental or "
+                + "the transfer modes hardlink and move.")
+    private boolean dedup;
+
+    @Option(names = { "--large-file-threshold" },
+            paramLabel = "size",
+            description = "Copy files of at least this size in chunks by multiple threads, preallocating the target file. Only applies to files of which no checksums are computed "
+                + "while copying. Use 0B to copy every file in one piece. Default: ${DEFAULT-VALUE}",
+            defaultValue = "1GiB")
+    private String largeFileThreshold;
+
+    @Option(names = { "--max-bytes-per-second" },
+            paramLabel = "size",
+            description = "Limit the number of bytes copied per second, e.g. 200MiB. Default: unlimited.")
+    private String maxBytesPerSecond;
+
+    @Option(names = { "--max-files-per-second" },
+            paramLabel = "count",
+            description = "Limit the number of files copied per second. Default: unlimited.")
+    private long maxFilesPerSecond;
+
+    @Option(names = { "--throttle-file" },
+            paramLabel = "file",
+            description = "A properties file with the keys '" + Throttle.MAX_BYTES_PER_SECOND + "' and '" + Throttle.MAX_FILES_PER_SECOND + "'. It is re-read when it changes, "
+                + "so that the limits can be adjusted while copying. It overrides the limits given on the command line.")
+    private Path throttleFile;
+
+    @Option(names = { "--progress" },
+            paramLabel = "none|text|ndjson",
+            description = "Periodically report the progress on stderr, either as text or as newline-delimited JSON. The totals are determined by a scan of the source that runs "
+                + "alongside the copy; see --scan-archive for TAR archives. Default: ${DEFAULT-VALUE}",
+            defaultValue = "none")
+    private String progress;
+
+    @Option(names = { "--progress-interval" },
+            paramLabel = "seconds",
+            description = "The number of seconds between progress reports. Default: ${DEFAULT-VALUE}",
+            defaultValue = "5")
+    private int progressInterval;
+
+    @Option(names = { "--verify" },
+            description = "After copying, verify that the target is identical to the source, comparing the sizes and then the checksums of all files, and report the differences.")
+    private boolean verify;
+
+    @Option(names = { "--verify-threads" },
+            paramLabel = "count",
+            description = "With --verify, the number of threads to read files with. Default: the number of copying threads.")
+    private Integer verifyThreads;
+
+    @Option(names = { "--import" },
+            description = "Submit an import job for each object (top-level directory) of the batch as soon as it has been copied, so that importing overlaps with copying "
+                + "the rest of the batch. Cannot be combined with --resume; import a resumed batch with 'import start' after copying it.")
+    private boolean importObjects;
+
+    @Option(names = { "--max-in-flight-imports" },
+            paramLabel = "count",
+            description = "With --import, the maximum number of import submissions in flight. Copying waits when this is reached. Default: ${DEFAULT-VALUE}",
+            defaultValue = "4")
+    private int maxInFlightImports;
+
+    @Option(names = { "-n", "--dry-run" },
+            description = "Only scan the source and check that the import area has enough space and inodes for it; do not copy anything.")
+    private boolean dryRun;
+
+    @Option(names = { "--skip-space-check" },
+            description = "Do not scan the source before copying to check that the import area has enough space and inodes for it.")
+    private boolean skipSpaceCheck;
+
+    @Option(names = { "--scan-archive" },
+            description = "Also scan a .tar, .tar.gz or .tgz source before extracting it, to check space and inodes and to report the totals in the progress. This reads (and "
+                + "decompresses) the whole archive an extra time, so by default a TAR archive is extracted without these.")
+    private boolean scanArchive;
+
+    private ImportSubmitter importSubmitter;
+
     @Override
     public Integer call() throws Exception {
         log.debug("Copying batch from {} to {}", source, target);
-        if (!Files.isDirectory(source)) {
-            System.err.println("Source must be an existing directory.");
+        var archiveFormat = ArchiveFormat.of(source);
+        if (!Files.isDirectory(source) && archiveFormat.isEmpty()) {
+            System.err.println("Source must be an existing directory or archive.");
+            return 1;
+        }
+
+        if (threads < 1) {
+            System.err.println("Number of threads must be at least 1.");
+            return 1;
+        }
+
+        TransferMode transferMode;
+        try {
+            transferMode = TransferMode.valueOf(transfer.toUpperCase(Locale.ROOT));
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Unknown transfer mode: " + transfer);
+            return 1;
+        }
+
+        List<ChecksumAlgorithm> algorithms;
+        try {
+            algorithms = manifestAlgorithms.stream().map(ChecksumAlgorithm::fromLabel).distinct().collect(Collectors.toList());
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+
+        long largeFileThresholdBytes;
+        try {
+            largeFileThresholdBytes = DataSize.parse(largeFileThreshold).toBytes();
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid large file threshold: " + e.getMessage());
+            return 1;
+        }
+
+        Throttle throttle;
+        try {
+            throttle = new Throttle(maxBytesPerSecond == null ? 0 : DataSize.parse(maxBytesPerSecond).toBytes(), maxFilesPerSecond);
+            if (throttleFile != null) {
+                // Read once here, so that a missing or invalid file is reported before anything is done; it is watched while copying
+                throttle.loadControlFile(throttleFile);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println("Invalid throttle limit: " + e.getMessage());
+            return 1;
+        }
+        catch (IOException e) {
+            System.err.println("Cannot read throttle file: " + e.getMessage());
+            return 1;
+        }
+
+        if (archiveFormat.isPresent() && (resume || incremental || dedup || (transferMode != TransferMode.AUTO && transferMode != TransferMode.STREAM))) {
+            System.err.println("An archive is always extracted completely; it cannot be combined with --resume, --incremental, --dedup or a transfer mode other than stream.");
+            return 1;
+        }
+
+        if (verify && (archiveFormat.isPresent() || transferMode == TransferMode.MOVE || importObjects)) {
+            // With --import, objects would be imported before they are verified
+            System.err.println("Option --verify cannot be combined with --import, an archive source or transfer mode move.");
+            return 1;
+        }
+        if (verifyThreads != null && verifyThreads < 1) {
+            System.err.println("Number of verify threads must be at least 1.");
+            return 1;
+        }
+
+        // A resumed copy skips the objects completed before, without knowing whether they were submitted
+        if (importObjects && (staged || incremental || resume || archiveFormat.isPresent())) {
+            System.err.println("Option --import cannot be combined with --staged, --incremental, --resume or an archive source.");
+            return 1;
+        }
+        if (maxInFlightImports < 1) {
+            System.err.println("Maximum number of imports in flight must be at least 1.");
+            return 1;
+        }
+
+        if (!List.of("none", "text", "ndjson").contains(progress)) {
+            System.err.println("Unknown progress format: " + progress);
+            return 1;
+        }
+        if (progressInterval < 1) {
+            System.err.println("Progress interval must be at least 1 second.");
+            return 1;
+        }
+
+        if (dedup && (incremental || transferMode == TransferMode.HARDLINK || transferMode == TransferMode.MOVE)) {
+            System.err.println("Option --dedup cannot be combined with --incremental or the transfer modes hardlink and move.");
             return 1;
         }
 
         var importAreaConfig = context.getImportAreaConfig();
+        var statistics = new CopyStatistics();
+        var copierBuilder = BatchCopier.builder()
+            .threads(threads)
+            .transferMode(transferMode)
+            .resume(resume)
+            .incremental(incremental)
+            .compareChecksums(checksum)
+            .manifestAlgorithms(algorithms)
+            .staged(staged)
+            .largeFileThreshold(largeFileThresholdBytes)
+            .throttle(throttle)
+            .statistics(statistics)
+            .objectCopiedListener(this::objectCopied)
+            .filePermissions(getPermissions(importAreaConfig.getFileMode()))
+            .directoryPermissions(getPermissions(importAreaConfig.getDirectoryMode()));
 
         if (!target.toAbsolutePath().startsWith(importAreaConfig.getPath().toAbsolutePath())) {
             System.err.println("Destination must be inside the import area.");
             return 1;
         }
 
-        if (target.getFileName().equals(source.getFileName()) && Files.exists(target)) {
+        // The batch in an archive is named after the archive without its extension
+        var sourceName = archiveFormat.map(format -> Path.of(format.getBatchName(source))).orElse(source.getFileName());
+        if (target.getFileName().equals(sourceName) && Files.exists(target)) {
             log.debug("Source and target have the same name, and target exists.");
-            if (isDirectoryEmpty(target)) {
-                log.debug("Target directory is empty.");
-                Files.createDirectories(target); // In case some ancestors of the target do not exist yet
-                FileUtils.copyDirectory(source.toFile(), target.toFile());
-                System.err.printf("Copied %s to %s%n", source, target);
-            }
-            else {
-                System.err.println("Target directory not empty. When source and target have the same name, and target exists, it must be empty.");
+            if (!resume && !incremental && !isDirectoryEmpty(target)) {
+                System.err.println("Target directory not empty. When source and target have the same name, and target exists, it must be empty (unless resuming or copying incrementally).");
                 return 1;
             }
+            log.debug("Target directory is empty.");
         }
         else if (Files.exists(target)) {
             log.debug("Target exists, but has a different name than the source.");
-            target = target.resolve(source.getFileName());
-            FileUtils.copyDirectory(source.toFile(), target.toFile());
-            System.err.printf("Copied %s to %s%n", source, target);
+            target = target.resolve(sourceName);
         }
         else {
             log.debug("Target does not exist yet.");
-            Files.createDirectories(target.getParent());
-            FileUtils.copyDirectory(source.toFile(), target.toFile());
-            System.err.printf("Copied %s to %s%n", source, target);
         }
 
-        System.err.printf("Setting permissions on %s%n", target);
-        setModeRecursively(target, importAreaConfig.getFileMode(), importAreaConfig.getDirectoryMode());
+        if (staged && incremental) {
+            System.err.println("Options --staged and --incremental cannot be combined.");
+            return 1;
+        }
+        if (staged && Files.exists(target) && !isDirectoryEmpty(target)) {
+            System.err.println("Target already exists. A staged copy cannot be published over an existing batch.");
+            return 1;
+        }
+        if (staged && !resume && Files.exists(BatchCopier.getStagingDirectory(target))) {
+            System.err.printf("Staging directory %s already exists. Use --resume to continue an interrupted copy.%n", BatchCopier.getStagingDirectory(target));
+            return 1;
+        }
+
+        // What a resumed copy skips is not counted in the plan and the progress
+        Set<String> completed = resume ? CopyJournal.readCompleted(staged ? BatchCopier.getStagingDirectory(target) : target) : Set.of();
+        // Totalling a TAR archive takes about as long as extracting it
+        var scanSource = archiveFormat.isEmpty() || archiveFormat.get() == ArchiveFormat.ZIP || scanArchive;
+        CopyPlan plan = null;
+        if (dryRun || (!skipSpaceCheck && scanSource)) {
+            plan = CopyPlan.create(source, completed, importAreaConfig.getPath(), transferMode, threads);
+            if (dryRun || !plan.fits()) {
+                printPlan(plan);
+            }
+            if (dryRun) {
+                return plan.fits() ? 0 : 1;
+            }
+            if (!plan.fits()) {
+                if (!resume && !incremental) {
+                    System.err.println("Not copying: the import area does not have enough space or inodes for the batch.");
+                    return 1;
+                }
+                System.err.println("Continuing, because part of the batch may already be in the target.");
+            }
+        }
+
+        Files.createDirectories(target.getParent());
+        var monitor = createProgressMonitor(plan, completed, scanSource, statistics);
+        var submitter = importObjects ? new ImportSubmitter(context.getApi(), maxInFlightImports, this::printSubmission) : null;
+        // Read by the copier's listener
+        importSubmitter = submitter;
+        // Opened after all checks, so that a large index is not read for nothing, and here, so that it is always written back
+        try (throttle; monitor; submitter; var dedupIndex = dedup ? DedupIndex.open(importAreaConfig.getPath()) : null) {
+            if (throttleFile != null) {
+                throttle.watchControlFile(throttleFile);
+            }
+            copierBuilder.dedupIndex(dedupIndex).build().copy(source, target);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 1;
+        }
+        System.err.printf("Copied %s to %s%n", source, target);
+        if (incremental) {
+            System.err.printf("Copied %d files (%d bytes); skipped %d unchanged files, saving %d bytes; removed %d entries not in the source%n",
+                statistics.getFilesCopied(), statistics.getBytesCopied(), statistics.getFilesUnchanged(), statistics.getBytesUnchanged(), statistics.getEntriesRemoved());
+        }
+        if (dedup) {
+            System.err.printf("Copied %d files (%d bytes); linked %d files to identical files in the import area, saving %d bytes%n",
+                statistics.getFilesCopied(), statistics.getBytesCopied(), statistics.getFilesDeduplicated(), statistics.getBytesDeduplicated());
+        }
+        for (var algorithm : algorithms) {
+            System.err.printf("Wrote %s%n", ChecksumManifest.getManifestFile(target, algorithm));
+        }
+        if (verify && !verify(target)) {
+            return 1;
+        }
+        if (importSubmitter != null) {
+            var submissions = importSubmitter.getSubmissions();
+            var failed = submissions.stream().filter(submission -> !submission.isSuccessful()).count();
+            System.err.printf("Submitted %d import jobs; %d submissions failed%n", submissions.size() - failed, failed);
+            if (failed > 0) {
+                return 1;
+            }
+        }
         return 0;
     }
 
-    private boolean isDirectoryEmpty(Path directory) throws IOException {
-        try (var files = Files.list(directory)) {
-            return files.findAny().isEmpty();
+    private boolean verify(Path target) throws IOException {
+        var result = new BatchVerifier(verifyThreads == null ? threads : verifyThreads).verify(source, target);
+        for (var mismatch : result.getMismatches()) {
+            System.err.printf("%s: %s (%s)%n", mismatch.getType(), mismatch.getPath(), mismatch.getDetail());
+        }
+        if (result.isIdentical()) {
+            System.err.printf("Verified %d files (%d bytes): target is identical to source%n", result.getFilesVerified(), result.getBytesVerified());
+            return true;
         }
+        System.err.printf("Verification failed: %d differences found; %d files (%d bytes) are identical%n", result.getMismatches().size(), result.getFilesVerified(),
+            result.getBytesVerified());
+        return false;
     }
 
-    private void setModeRecursively(Path path, String fileMode, String directoryMode) throws IOException {
-        Set<PosixFilePermission> filePermissions = getPermissions(fileMode);
-        Set<PosixFilePermission> directoryPermissions = getPermissions(directoryMode);
-        setModeRecursively(path, filePermissions, directoryPermissions);
+    private void objectCopied(Path directory) throws IOException {
+        if (importSubmitter != null) {
+            importSubmitter.submit(directory);
+        }
     }
 
-    private void setModeRecursively(Path path, Set<PosixFilePermission> filePermissions, Set<PosixFilePermission> directoryPermissions) throws IOException {
-        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+    private void printSubmission(Submission submission) {
+        if (submission.isSuccessful()) {
+            System.err.printf("Submitted import job %s for %s%n", submission.getJobId(), submission.getPath());
+        }
+        else {
+            System.err.printf("Could not submit import job for %s: %s%n", submission.getPath(), submission.getError());
+        }
+    }
 
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.setPosixFilePermissions(file, filePermissions);
-                return FileVisitResult.CONTINUE;
-            }
+    private ProgressMonitor createProgressMonitor(CopyPlan plan, Set<String> completed, boolean scanSource, CopyStatistics statistics) {
+        if ("none".equals(progress)) {
+            return null;
+        }
+        var interval = Duration.ofSeconds(progressInterval);
+        if (plan == null && !scanSource) {
+            // Progress without totals
+            return new ProgressMonitor(null, statistics, interval, this::printProgress);
+        }
+        if (plan == null) {
+            return new ProgressMonitor(source, completed, threads, statistics, interval, this::printProgress);
+        }
+        return new ProgressMonitor(plan.getScan(), statistics, interval, this::printProgress);
+    }
 
-            @Override
-            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-                Files.setPosixFilePermissions(dir, directoryPermissions);
-                return FileVisitResult.CONTINUE;
+    private void printPlan(CopyPlan plan) {
+        var scan = plan.getScan();
+        System.err.printf("Source: %d files and %d directories, %s%n", scan.getFiles(), scan.getDirectories(), formatSize(scan.getBytes()));
+        System.err.printf("Space: %s required, %s usable%s%n", formatSize(plan.getRequiredBytes()), formatSize(plan.getUsableBytes()),
+            plan.hasEnoughSpace() ? "" : " - NOT ENOUGH");
+        if (plan.getFreeInodes() == null) {
+            System.err.printf("Inodes: %d required, number of free inodes unknown%n", plan.getRequiredInodes());
+        }
+        else {
+            System.err.printf("Inodes: %d required, %d free%s%n", plan.getRequiredInodes(), plan.getFreeInodes(), plan.hasEnoughInodes() ? "" : " - NOT ENOUGH");
+        }
+    }
+
+    private void printProgress(Progress p) {
+        if ("ndjson".equals(progress)) {
+            try {
+                System.err.println(context.getObjectMapper().writeValueAsString(p));
+            }
+            catch (JsonProcessingException e) {
+                log.warn("Could not serialize progress", e);
             }
-        });
+            return;
+        }
+        var files = p.getFilesTotal() == null ? String.valueOf(p.getFilesDone()) : String.format("%d/%d", p.getFilesDone(), p.getFilesTotal());
+        var bytes = p.getBytesTotal() == null
+            ? formatSize(p.getBytesDone())
+            : String.format("%s/%s (%d%%)", formatSize(p.getBytesDone()), formatSize(p.getBytesTotal()), p.getBytesTotal() == 0 ? 100 : p.getBytesDone() * 100 / p.getBytesTotal());
+        var eta = p.getEtaSeconds() == null ? "unknown" : String.format("%d:%02d:%02d", p.getEtaSeconds() / 3600, p.getEtaSeconds() / 60 % 60, p.getEtaSeconds() % 60);
+        System.err.printf("Files: %s, data: %s, current: %s/s, average: %s/s, ETA: %s%n", files, bytes, formatSize(p.getCurrentBytesPerSecond()), formatSize(p.getAverageBytesPerSecond()), eta);
+    }
+
+    static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        var exponent = Math.min((int) (Math.log(bytes) / Math.log(1024)), 6);
+        return String.format("%.1f %siB", bytes / Math.pow(1024, exponent), "KMGTPE".charAt(exponent - 1));
+    }
+
+    private boolean isDirectoryEmpty(Path directory) throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.findAny().isEmpty();
+        }
     }
 
-    private Set<PosixFilePermission> getPermissions(String mode) throws IOException {
+    static Set<PosixFilePermission> getPermissions(String mode) {
         try {
             return PosixFilePermissions.fromString(mode);
         }
@@ -136,7 +496,7 @@ public class CopyBatch implements Callable<Integer> {
         }
     }
 
-    private Set<PosixFilePermission> permissionsFromOctal(int octal) {
+    static Set<PosixFilePermission> permissionsFromOctal(int octal) {
         String binaryStr = Integer.toBinaryString(octal);
         while (binaryStr.length() < 9) {
             binaryStr = "0" + binaryStr;
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.core.PermissionFixer;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@Slf4j
+@Command(name = "fix-permissions",
+         mixinStandardHelpOptions = true,
+         description = "Sets the permissions of the files and directories in the import area to the modes specified in the configuration. Only entries that have different "
+             + "permissions are changed.")
+@RequiredArgsConstructor
+public class ImportAreaFixPermissions implements Callable<Integer> {
+    private final Context context;
+
+    @Parameters(index = "0",
+                paramLabel = "path",
+                arity = "0..1",
+                description = "The directory inside the import area to fix. Default: the whole import area.")
+    private Path path;
+
+    @Option(names = { "-t", "--threads" },
+            description = "The number of threads to walk the tree with. Default: the number of available processors.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public Integer call() throws Exception {
+        var importAreaConfig = context.getImportAreaConfig();
+        if (path == null) {
+            path = importAreaConfig.getPath();
+        }
+        log.debug("Fixing permissions in {}", path);
+        if (!path.toAbsolutePath().startsWith(importAreaConfig.getPath().toAbsolutePath())) {
+            System.err.println("Path must be inside the import area.");
+            return 1;
+        }
+        if (!Files.isDirectory(path)) {
+            System.err.println("Path must be an existing directory.");
+            return 1;
+        }
+        if (threads < 1) {
+            System.err.println("Number of threads must be at least 1.");
+            return 1;
+        }
+
+        var fixer = new PermissionFixer(threads,
+            CopyBatch.getPermissions(importAreaConfig.getFileMode()),
+            CopyBatch.getPermissions(importAreaConfig.getDirectoryMode()));
+        var result = fixer.fix(path);
+        System.err.printf("Checked %d entries in %s; changed the permissions of %d%n", result.getEntries(), path, result.getChanged());
+        return 0;
+    }
+}
@@ -18,19 +18,53 @@ package nl.knaw.dans.datavaultcli.command;
 import lombok.RequiredArgsConstructor;
 import nl.knaw.dans.datavaultcli.Context;
 import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.core.CleanupPlan;
+import nl.knaw.dans.datavaultcli.core.JobRecord;
+import nl.knaw.dans.datavaultcli.core.TreeDeleter;
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.concurrent.Callable;
 
 @Command(name = "cleanup",
          mixinStandardHelpOptions = true,
-         description = "Clean up inbox and outbox for all successfully finished import jobs.")
+         description = "Clean up inbox and outbox for all successfully finished import jobs, or, with --local, the directories in the import area that were imported successfully.")
 @RequiredArgsConstructor
 public class ImportCleanup implements Callable<Integer> {
     private final Context context;
 
+    @Option(names = { "--local" },
+            description = "Instead of cleaning up the inbox and outbox of the service, delete the directories in the import area that were imported successfully.")
+    private boolean local;
+
+    @Option(names = { "--keep-last" },
+            paramLabel = "count",
+            description = "With --local, keep this number of the most recently imported directories. Default: ${DEFAULT-VALUE}",
+            defaultValue = "0")
+    private int keepLast;
+
+    @Option(names = { "--min-age" },
+            paramLabel = "hours",
+            description = "With --local, keep directories that were imported less than this number of hours ago. Default: ${DEFAULT-VALUE}",
+            defaultValue = "0")
+    private long minAge;
+
+    @Option(names = { "-t", "--threads" },
+            description = "With --local, the number of threads to delete with. Default: the number of available processors.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Option(names = { "-n", "--dry-run" },
+            description = "With --local, only show which directories would be deleted.")
+    private boolean dryRun;
+
     @Override
     public Integer call() {
+        if (local) {
+            return cleanupLocal();
+        }
         try {
             context.getApi().importsCleanupPost();
             System.err.println("Import cleanup completed.");
@@ -41,4 +75,49 @@ public class ImportCleanup implements Callable<Integer> {
             return 1;
         }
     }
+
+    private Integer cleanupLocal() {
+        if (keepLast < 0 || minAge < 0) {
+            System.err.println("Number of directories to keep and minimum age must not be negative.");
+            return 1;
+        }
+        if (threads < 1) {
+            System.err.println("Number of threads must be at least 1.");
+            return 1;
+        }
+        CleanupPlan plan;
+        try {
+            var jobs = context.getApi().importsGet().stream().map(JobRecord::of).toList();
+            plan = CleanupPlan.create(jobs, context.getImportAreaConfig().getPath(), keepLast, Duration.ofHours(minAge), Instant.now());
+        }
+        catch (ApiException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+        System.err.printf("%d imported directories to delete, %d kept%n", plan.getToDelete().size(), plan.getKept().size());
+
+        var deleter = new TreeDeleter(threads);
+        long bytesReclaimed = 0;
+        var failed = 0;
+        for (var candidate : plan.getToDelete()) {
+            if (dryRun) {
+                System.err.printf("Would delete %s (imported %s)%n", candidate.getPath(), candidate.getImported());
+                continue;
+            }
+            try {
+                var result = deleter.delete(candidate.getPath());
+                bytesReclaimed += result.getBytesReclaimed();
+                System.err.printf("Deleted %s: %d files, %s reclaimed%n", candidate.getPath(), result.getFiles(), CopyBatch.formatSize(result.getBytesReclaimed()));
+            }
+            catch (IOException e) {
+                System.err.printf("Could not delete %s: %s%n", candidate.getPath(), e.getMessage());
+                failed++;
+            }
+        }
+        if (!dryRun) {
+            System.err.printf("Deleted %d directories; %s reclaimed%s%n", plan.getToDelete().size() - failed, CopyBatch.formatSize(bytesReclaimed),
+                failed == 0 ? "" : String.format("; %d could not be deleted", failed));
+        }
+        return failed == 0 ? 0 : 1;
+    }
 }
@@ -20,13 +20,35 @@ import lombok.RequiredArgsConstructor;
 import nl.knaw.dans.datavaultcli.Context;
 import nl.knaw.dans.datavaultcli.api.ImportCommandDto;
 import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.core.AimdController;
+import nl.knaw.dans.datavaultcli.core.BatchSharder;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter.Submission;
+import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Command(name = "start",
          mixinStandardHelpOptions = true,
@@ -35,23 +57,109 @@ import java.util.concurrent.Callable;
 public class ImportStart implements Callable<Integer> {
     private final Context context;
 
-    @Parameters(index = "0",
-                paramLabel = "path",
-                description = "The path to the object or batch of objects to import.")
-    private String path;
+    static class Selection {
+        @Parameters(index = "0",
+                    paramLabel = "path",
+                    description = "The path to the object or batch of objects to import.")
+        String path;
+
+        @Option(names = { "-f", "--from-file" },
+                paramLabel = "file",
+                description = "A file with the paths to import, one per line, or - to read them from standard input. Empty lines and lines starting with # are ignored.")
+        String fromFile;
+    }
+
+    @ArgGroup(exclusive = true, multiplicity = "1")
+    Selection selection;
 
     @Option(names = { "-s", "--single-object" },
             description = "The path parameter points to a single object import directory (by default path points to a batch directory).")
     private boolean singleObject;
 
+    @Option(names = { "--validate" },
+            description = "Check the batches or objects for problems that would make their import fail, as import validate does, and submit nothing if errors are found. "
+                + "With --from-file, the whole list is read and checked before the first job is submitted.")
+    private boolean validate;
+
+    @Option(names = { "-p", "--parallelism" },
+            paramLabel = "count",
+            description = "With --from-file or a sharded batch, the maximum number of jobs that are submitted at the same time. Default: ${DEFAULT-VALUE}",
+            defaultValue = "4")
+    private int parallelism;
+
+    @Option(names = { "--retries" },
+            paramLabel = "count",
+            description = "With --from-file or a sharded batch, the number of times a submission is retried if the service is unreachable or fails with a server error. "
+                + "Default: ${DEFAULT-VALUE}",
+            defaultValue = "3")
+    private int retries;
+
+    @Option(names = { "--adaptive" },
+            description = "With --from-file or a sharded batch, adapt the number of jobs that are submitted at the same time, starting at --parallelism: it is raised while "
+                + "submissions succeed quickly and halved when they are slow or the service is overloaded. With --wait, a job counts as in flight until it has finished, so "
+                + "that the number of jobs the service is working on is adapted.")
+    private boolean adaptive;
+
+    @Option(names = { "--max-parallelism" },
+            paramLabel = "count",
+            description = "With --adaptive, the highest number of jobs in flight. Default: ${DEFAULT-VALUE}",
+            defaultValue = "32")
+    private int maxParallelism;
+
+    @Option(names = { "--shard" },
+            paramLabel = "count",
+            description = "Split the batch into this number of smaller batches next to it, by moving its objects into them, and start a job for each of them.")
+    private Integer shards;
+
+    @Option(names = { "--max-objects" },
+            paramLabel = "count",
+            description = "Split the batch into smaller batches of at most this number of objects next to it, by moving its objects into them, and start a job for each of them.")
+    private Integer maxObjects;
+
+    @Option(names = { "-w", "--wait" },
+            description = "Wait for the submitted jobs to finish. The exit code is then 0 if all jobs succeeded, 1 if any job failed and 2 if the timeout expired.")
+    private boolean waitForCompletion;
+
+    @Option(names = { "--timeout" },
+            paramLabel = "seconds",
+            description = "With --wait, the maximum number of seconds to wait. Default: wait indefinitely.")
+    private Long timeout;
+
+    @Option(names = { "--max-interval" },
+            paramLabel = "seconds",
+            description = "With --wait, the maximum number of seconds between polls. Default: ${DEFAULT-VALUE}",
+            defaultValue = "60")
+    private long maxInterval;
+
     @Override
-    public Integer call() {
+    public Integer call() throws Exception {
+        // Checked before anything is submitted, so that a typo does not leave jobs running that are not waited for
+        if (waitForCompletion && !ImportWait.checkOptions(timeout, maxInterval)) {
+            return 1;
+        }
+        if (selection.fromFile != null) {
+            if (shards != null || maxObjects != null) {
+                System.err.println("Options --shard and --max-objects cannot be combined with --from-file.");
+                return 1;
+            }
+            return startFromFile();
+        }
+        if (validate && !ImportValidate.validate(context, Path.of(selection.path), singleObject, Runtime.getRuntime().availableProcessors())) {
+            System.err.println("Validation failed; no job submitted.");
+            return 1;
+        }
+        if (shards != null || maxObjects != null) {
+            return startSharded();
+        }
         try {
-            Path batchDir = Paths.get(this.path);
+            Path batchDir = Paths.get(selection.path);
             var importJob = context.getApi().importsPost(new ImportCommandDto()
                 .path(Path.of(batchDir.toString()).toAbsolutePath().toString())
                 .singleObject(singleObject));
             System.err.println("Submitted import job: " + context.getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(importJob));
+            if (waitForCompletion) {
+                return ImportWait.waitForJobs(context, List.of(importJob.getId()), timeout, maxInterval);
+            }
             return 0;
         }
         catch (ApiException | JsonProcessingException e) {
@@ -59,4 +167,199 @@ public class ImportStart implements Callable<Integer> {
             return 1;
         }
     }
+
+    private Integer startSharded() throws InterruptedException {
+        if (singleObject) {
+            System.err.println("Options --shard and --max-objects can only be used for a batch.");
+            return 1;
+        }
+        if (shards != null && maxObjects != null) {
+            System.err.println("Options --shard and --max-objects cannot be combined.");
+            return 1;
+        }
+        if (shards != null && shards < 1 || maxObjects != null && maxObjects < 1) {
+            System.err.println("Number of shards and maximum number of objects must be at least 1.");
+            return 1;
+        }
+        if (!checkSubmitterOptions()) {
+            return 1;
+        }
+        var batch = Path.of(selection.path).toAbsolutePath();
+        if (!Files.isDirectory(batch)) {
+            System.err.println("Path must be an existing directory.");
+            return 1;
+        }
+        List<Path> shardDirs;
+        try {
+            shardDirs = shards != null ? BatchSharder.splitInto(batch, shards) : BatchSharder.splitBySize(batch, maxObjects);
+        }
+        catch (IOException e) {
+            System.err.println("Could not split batch: " + e.getMessage());
+            return 1;
+        }
+        System.err.printf("Split %s into %d shards%n", batch, shardDirs.size());
+        return submitAll(shardDirs.stream());
+    }
+
+    private Integer startFromFile() throws InterruptedException {
+        if (!checkSubmitterOptions()) {
+            return 1;
+        }
+        // Unless they must all be validated first, the paths are submitted while reading, so that a long list does not have to be kept in memory
+        try (var reader = openPathList()) {
+            var paths = reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(Path::of);
+            if (!validate) {
+                return submitAll(paths);
+            }
+            var pathList = paths.toList();
+            var invalid = 0;
+            for (var path : pathList) {
+                if (!ImportValidate.validate(context, path, singleObject, Runtime.getRuntime().availableProcessors())) {
+                    invalid++;
+                }
+            }
+            if (invalid > 0) {
+                System.err.printf("Validation failed for %d of %d paths; no jobs submitted.%n", invalid, pathList.size());
+                return 1;
+            }
+            return submitAll(pathList.stream());
+        }
+        catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Submits the paths and, with --wait, waits for the submitted jobs as one logical import. With --adaptive and --wait, the jobs are waited for while they are being submitted,
+     * so that the slot of each job is freed when it finishes.
+     *
+     * @return the exit code
+     */
+    private Integer submitAll(Stream<Path> paths) throws InterruptedException {
+        var controller = adaptive ? new AimdController(parallelism, 1, maxParallelism) : null;
+        var followJobs = adaptive && waitForCompletion;
+        var jobIds = new ConcurrentLinkedQueue<UUID>();
+        var submitted = new AtomicInteger();
+        Consumer<Submission> listener = submission -> {
+            printSubmission(submission);
+            if (followJobs && submission.isSuccessful()) {
+                submitted.incrementAndGet();
+                jobIds.add(submission.getJobId());
+            }
+        };
+        var submitter = controller == null
+            ? new ImportSubmitter(context.getApi(), parallelism, singleObject, retries, listener)
+            : new ImportSubmitter(context.getApi(), controller, followJobs, singleObject, retries, listener);
+        var allSubmitted = new AtomicBoolean();
+        var waiting = followJobs ? Executors.newSingleThreadExecutor() : null;
+        Future<Integer> waitResult = null;
+        if (waiting != null) {
+            waitResult = waiting.submit(() -> {
+                try {
+                    return ImportWait.waitForJobs(context, jobIds, allSubmitted::get, submitted::get, timeout, maxInterval, submitter::jobFinished);
+                }
+                finally {
+                    // After a timeout, the remaining submissions must not wait for jobs to finish
+                    submitter.stopHolding();
+                }
+            });
+            waiting.shutdown();
+        }
+        try (submitter) {
+            for (var path : (Iterable<Path>) paths::iterator) {
+                submitter.submit(path);
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            System.err.println("Error: " + e.getMessage());
+            if (waitResult != null) {
+                waitResult.cancel(true);
+            }
+            return 1;
+        }
+        finally {
+            allSubmitted.set(true);
+        }
+        var allSucceeded = printSummary(submitter);
+        if (controller != null) {
+            System.err.printf("Final limit of jobs in flight: %d%n", controller.getLimit());
+        }
+        if (waitResult != null) {
+            try {
+                var exitCode = waitResult.get();
+                return allSucceeded ? exitCode : 1;
+            }
+            catch (ExecutionException e) {
+                System.err.println("Error: " + e.getCause().getMessage());
+                return 1;
+            }
+        }
+        return finish(submitter, allSucceeded);
+    }
+
+    private boolean checkSubmitterOptions() {
+        if (parallelism < 1) {
+            System.err.println("Parallelism must be at least 1.");
+            return false;
+        }
+        if (retries < 0) {
+            System.err.println("Number of retries must not be negative.");
+            return false;
+        }
+        if (adaptive && maxParallelism < parallelism) {
+            System.err.println("Maximum parallelism must not be lower than the parallelism.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * With --wait, waits for the submitted jobs as one logical import.
+     *
+     * @return the exit code
+     */
+    private Integer finish(ImportSubmitter submitter, boolean allSubmitted) throws InterruptedException {
+        if (waitForCompletion) {
+            var ids = submitter.getSubmissions().stream()
+                .filter(Submission::isSuccessful)
+                .map(Submission::getJobId)
+                .toList();
+            var exitCode = ImportWait.waitForJobs(context, ids, timeout, maxInterval);
+            return allSubmitted ? exitCode : 1;
+        }
+        return allSubmitted ? 0 : 1;
+    }
+
+    private BufferedReader openPathList() throws IOException {
+        if ("-".equals(selection.fromFile)) {
+            return new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        }
+        return Files.newBufferedReader(Path.of(selection.fromFile), StandardCharsets.UTF_8);
+    }
+
+    private void printSubmission(Submission submission) {
+        if (!submission.isSuccessful()) {
+            System.err.printf("Could not submit import job for %s: %s%n", submission.getPath(), submission.getError());
+        }
+    }
+
+    private boolean printSummary(ImportSubmitter submitter) {
+        var submissions = submitter.getSubmissions().stream()
+            .sorted(Comparator.comparing(Submission::getPath))
+            .toList();
+        var pathWidth = Math.max(4, submissions.stream().mapToInt(submission -> submission.getPath().toString().length()).max().orElse(0));
+        var format = "%-" + pathWidth + "s  %-36s  %8s  %s%n";
+        System.err.printf(format, "PATH", "JOB ID", "ATTEMPTS", "ERROR");
+        for (var submission : submissions) {
+            System.err.printf(format, submission.getPath(), submission.isSuccessful() ? submission.getJobId() : "-", submission.getAttempts(),
+                submission.isSuccessful() ? "" : submission.getError());
+        }
+        var failed = submissions.stream().filter(submission -> !submission.isSuccessful()).count();
+        System.err.printf("Submitted %d import jobs; %d submissions failed%n", submissions.size() - failed, failed);
+        return failed == 0;
+    }
 }
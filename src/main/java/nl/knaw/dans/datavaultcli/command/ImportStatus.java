@@ -15,24 +15,44 @@
  */
 package nl.knaw.dans.datavaultcli.command;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
 import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.core.JobFilter;
+import nl.knaw.dans.datavaultcli.core.JobRecord;
+import nl.knaw.dans.datavaultcli.core.JobSummary;
+import picocli.CommandLine.ArgGroup;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
-import picocli.CommandLine.ArgGroup;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 @Command(name = "status",
          mixinStandardHelpOptions = true,
          description = "Get the status of a job.")
 @RequiredArgsConstructor
 public class ImportStatus implements Callable<Integer> {
+    private static final List<String> CSV_COLUMNS = List.of("id", "path", "status", "created", "finished", "message");
+
     private final Context context;
 
     static class Selection {
@@ -46,23 +66,204 @@ public class ImportStatus implements Callable<Integer> {
     @ArgGroup(exclusive = true, multiplicity = "1")
     Selection selection;
 
+    @Option(names = { "--format" },
+            paramLabel = "json|ndjson|csv",
+            description = "The output format. The default, json, pretty-prints the job or the list of jobs on stderr. The formats ndjson (one JSON object per line) and csv are "
+                + "written to stdout, one job at a time. Default: ${DEFAULT-VALUE}",
+            defaultValue = "json")
+    private String format;
+
+    @Option(names = { "--state" },
+            split = ",",
+            paramLabel = "status",
+            description = "With --all, show only jobs with one of these statuses, e.g. RUNNING,FAILED.")
+    private List<String> states = List.of();
+
+    @Option(names = { "--since" },
+            paramLabel = "time",
+            description = "With --all, show only jobs created at or after this time, given as an ISO-8601 date (2024-05-01) or date-time (2024-05-01T12:00:00Z).")
+    private String since;
+
+    @Option(names = { "--until" },
+            paramLabel = "time",
+            description = "With --all, show only jobs created before this time, given as an ISO-8601 date or date-time.")
+    private String until;
+
+    @Option(names = { "--path-prefix" },
+            paramLabel = "prefix",
+            description = "With --all, show only jobs of which the path starts with this prefix.")
+    private String pathPrefix;
+
+    @Option(names = { "--summary" },
+            description = "With --all, show the number of selected jobs per status and the minimum, average and maximum duration of the finished jobs instead of the jobs "
+                + "themselves. Durations are only available if the service reports when jobs were created and finished. The summary is written to stdout, as a single JSON "
+                + "object with --format ndjson and as text otherwise.")
+    private boolean summary;
+
     @Override
     public Integer call() {
+        if (!List.of("json", "ndjson", "csv").contains(format)) {
+            System.err.println("Unknown format: " + format);
+            return 1;
+        }
+        if (!selection.all && (!states.isEmpty() || since != null || until != null || pathPrefix != null || summary)) {
+            System.err.println("Options --state, --since, --until, --path-prefix and --summary can only be used with --all.");
+            return 1;
+        }
+        JobFilter filter;
+        try {
+            filter = JobFilter.builder()
+                .states(states.stream().map(state -> state.toUpperCase(Locale.ROOT)).collect(Collectors.toSet()))
+                .since(since == null ? null : parseTime(since))
+                .until(until == null ? null : parseTime(until))
+                .pathPrefix(pathPrefix)
+                .build();
+        }
+        catch (DateTimeParseException e) {
+            System.err.println("Invalid time: " + e.getParsedString());
+            return 1;
+        }
+
         try {
-            if (selection.all) {
-                var jobs = context.getApi().importsGet();
-                System.err.println(context.getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(jobs));
-                return 0;
+            List<ImportJobStatusDto> jobs = selection.all ? context.getApi().importsGet() : List.of(context.getApi().importsIdGet(selection.id));
+            if (summary) {
+                printSummary(jobs, filter);
+            }
+            else if ("json".equals(format)) {
+                printJson(jobs, filter);
             }
             else {
-                var importJob = context.getApi().importsIdGet(selection.id);
-                System.err.println(context.getObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(importJob));
-                return 0;
+                printLines(jobs, filter);
             }
+            return 0;
         }
-        catch (ApiException | JsonProcessingException e) {
+        catch (ApiException | IOException e) {
             System.err.println("Error: " + e.getMessage());
             return 1;
         }
+        catch (IllegalStateException e) {
+            // Thrown by the filter, possibly after some jobs were written
+            System.err.println();
+            System.err.println("Error: " + e.getMessage() + "; options --since and --until cannot be used.");
+            return 1;
+        }
+    }
+
+    private void printJson(List<ImportJobStatusDto> jobs, JobFilter filter) throws IOException {
+        var objectMapper = context.getObjectMapper();
+        if (!selection.all) {
+            System.err.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jobs.get(0)));
+            return;
+        }
+        // Written one job at a time, so that the complete output is never held in memory
+        try (var generator = objectMapper.writerWithDefaultPrettyPrinter().createGenerator(System.err)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            for (var job : jobs) {
+                if (filter.test(JobRecord.of(job))) {
+                    generator.writeObject(job);
+                }
+            }
+            generator.writeEndArray();
+        }
+        System.err.println();
+    }
+
+    private void printLines(List<ImportJobStatusDto> jobs, JobFilter filter) throws JsonProcessingException {
+        var out = stdout();
+        try {
+            if ("csv".equals(format)) {
+                out.println(String.join(",", CSV_COLUMNS));
+            }
+            for (var job : jobs) {
+                var record = JobRecord.of(job);
+                if (!filter.test(record)) {
+                    continue;
+                }
+                if ("ndjson".equals(format)) {
+                    out.println(context.getObjectMapper().writeValueAsString(job));
+                }
+                else {
+                    out.println(toCsv(record));
+                }
+            }
+        }
+        finally {
+            out.flush();
+        }
+    }
+
+    private void printSummary(List<ImportJobStatusDto> jobs, JobFilter filter) throws JsonProcessingException {
+        var jobSummary = new JobSummary();
+        for (var job : jobs) {
+            var record = JobRecord.of(job);
+            if (filter.test(record)) {
+                jobSummary.add(record);
+            }
+        }
+        var out = stdout();
+        if ("ndjson".equals(format)) {
+            var objectMapper = context.getObjectMapper();
+            var node = objectMapper.createObjectNode();
+            node.put("jobs", jobSummary.getJobs());
+            var counts = node.putObject("counts");
+            jobSummary.getCounts().forEach(counts::put);
+            node.put("timedJobs", jobSummary.getTimedJobs());
+            if (jobSummary.getTimedJobs() > 0) {
+                node.put("minDurationSeconds", jobSummary.getMinDuration().toSeconds());
+                node.put("averageDurationSeconds", jobSummary.getAverageDuration().toSeconds());
+                node.put("maxDurationSeconds", jobSummary.getMaxDuration().toSeconds());
+            }
+            out.println(objectMapper.writeValueAsString(node));
+        }
+        else {
+            out.printf("%-20s %10s%n", "STATUS", "COUNT");
+            jobSummary.getCounts().forEach((status, count) -> out.printf("%-20s %10d%n", status, count));
+            out.printf("%-20s %10d%n", "TOTAL", jobSummary.getJobs());
+            if (jobSummary.getTimedJobs() > 0) {
+                out.printf("Duration of %d finished jobs: min %s, avg %s, max %s%n", jobSummary.getTimedJobs(), formatDuration(jobSummary.getMinDuration()),
+                    formatDuration(jobSummary.getAverageDuration()), formatDuration(jobSummary.getMaxDuration()));
+            }
+        }
+        out.flush();
+    }
+
+    private static PrintWriter stdout() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+    }
+
+    private static String toCsv(JobRecord job) {
+        return CSV_COLUMNS.stream().map(column -> switch (column) {
+            case "id" -> job.getId();
+            case "path" -> job.getPath();
+            case "status" -> job.getStatus();
+            case "created" -> job.getCreated() == null ? null : job.getCreated().toString();
+            case "finished" -> job.getFinished() == null ? null : job.getFinished().toString();
+            default -> job.getMessage();
+        }).map(ImportStatus::quoteCsv).collect(Collectors.joining(","));
+    }
+
+    private static String quoteCsv(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.contains(",") || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    static String formatDuration(Duration duration) {
+        var seconds = duration.toSeconds();
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+
+    static Instant parseTime(String value) {
+        try {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        }
+        catch (DateTimeParseException e) {
+            return OffsetDateTime.parse(value).toInstant();
+        }
     }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.core.ImportWaiter;
+import nl.knaw.dans.datavaultcli.core.JobRecord;
+import nl.knaw.dans.datavaultcli.core.JobTracker;
+import nl.knaw.dans.datavaultcli.core.JobTracker.Change;
+import nl.knaw.dans.datavaultcli.core.JobTracker.TrackedJob;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+@Command(name = "top",
+         mixinStandardHelpOptions = true,
+         description = "Continuously show the jobs that are queued, running or failed, with the time each has been in its current status and the number of jobs finished per minute. "
+             + "All jobs are fetched with one request per poll; polling speeds up while jobs change and slows down while they do not.")
+@RequiredArgsConstructor
+public class ImportTop implements Callable<Integer> {
+    private static final String ESC = "\u001b[";
+    private static final Duration THROUGHPUT_WINDOW = Duration.ofMinutes(5);
+
+    private final Context context;
+
+    @Option(names = { "--format" },
+            paramLabel = "screen|ndjson",
+            description = "Either redraw the screen after each poll, or write a line of JSON to stdout for each job that was added, changed or removed since the previous poll, "
+                + "followed by a line with the statistics. Default: ${DEFAULT-VALUE}",
+            defaultValue = "screen")
+    private String format;
+
+    @Option(names = { "--max-interval" },
+            paramLabel = "seconds",
+            description = "The maximum number of seconds between polls. Polling starts every second and slows down to this interval while no jobs change. "
+                + "Default: ${DEFAULT-VALUE}",
+            defaultValue = "10")
+    private long maxInterval;
+
+    @Option(names = { "--max-rows" },
+            paramLabel = "count",
+            description = "The maximum number of jobs shown on the screen. Default: ${DEFAULT-VALUE}",
+            defaultValue = "40")
+    private int maxRows;
+
+    @Option(names = { "--iterations" },
+            paramLabel = "count",
+            description = "Stop after this number of polls. Default: run until interrupted.")
+    private Long iterations;
+
+    private final List<String> screen = new ArrayList<>();
+
+    @Override
+    public Integer call() throws InterruptedException {
+        if (!List.of("screen", "ndjson").contains(format)) {
+            System.err.println("Unknown format: " + format);
+            return 1;
+        }
+        if (maxInterval < 1) {
+            System.err.println("Maximum interval must be at least 1 second.");
+            return 1;
+        }
+        if (maxRows < 1) {
+            System.err.println("Maximum number of rows must be at least 1.");
+            return 1;
+        }
+        var screenMode = "screen".equals(format);
+        if (screenMode) {
+            // Clear the screen and hide the cursor, and show it again on Ctrl-C
+            System.out.print(ESC + "2J" + ESC + "?25l");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.print(ESC + (screen.size() + 1) + ";1H" + ESC + "?25h");
+                System.out.flush();
+            }));
+        }
+
+        var objectMapper = context.getObjectMapper();
+        var tracker = new JobTracker(THROUGHPUT_WINDOW);
+        var interval = ImportWaiter.DEFAULT_INITIAL_INTERVAL;
+        var max = Duration.ofSeconds(maxInterval);
+        String error = null;
+        for (long poll = 1; iterations == null || poll <= iterations; poll++) {
+            List<Change> changes = List.of();
+            try {
+                var jobs = context.getApi().importsGet().stream().map(JobRecord::of).toList();
+                changes = tracker.update(jobs, Instant.now());
+                error = null;
+            }
+            catch (ApiException e) {
+                // The service may be restarting; keep showing the last known state
+                error = e.getMessage();
+            }
+            var now = Instant.now();
+            if (screenMode) {
+                redraw(render(tracker, now, interval, error));
+            }
+            else {
+                printChanges(objectMapper, tracker, changes, now, error);
+            }
+            if (iterations != null && poll == iterations) {
+                break;
+            }
+            Thread.sleep(interval.toMillis());
+            if (!changes.isEmpty()) {
+                interval = ImportWaiter.DEFAULT_INITIAL_INTERVAL;
+            }
+            else {
+                interval = interval.plus(interval.dividedBy(2));
+                if (interval.compareTo(max) > 0) {
+                    interval = max;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private List<String> render(JobTracker tracker, Instant now, Duration interval, String error) {
+        var lines = new ArrayList<String>();
+        var counts = tracker.getCounts().entrySet().stream()
+            .map(e -> e.getKey() + ": " + e.getValue())
+            .collect(Collectors.joining(", "));
+        lines.add(String.format("%s  jobs/min: %.1f  polling every %ds", now.truncatedTo(ChronoUnit.SECONDS), tracker.getJobsPerMinute(now), interval.toSeconds()));
+        lines.add(counts.isEmpty() ? "No jobs" : counts);
+        lines.add(error == null ? "" : "Could not poll jobs: " + error);
+        lines.add(String.format("%-36s  %-10s  %10s  %s", "JOB ID", "STATUS", "ELAPSED", "PATH"));
+        var jobs = tracker.getVisibleJobs().stream()
+            .sorted(Comparator.comparing((TrackedJob job) -> statusOrder(job.getJob().getStatus()))
+                .thenComparing(job -> job.getElapsed(now), Comparator.reverseOrder()))
+            .toList();
+        for (var job : jobs.subList(0, Math.min(maxRows, jobs.size()))) {
+            var record = job.getJob();
+            var path = record.getPath() == null ? "" : record.getPath();
+            if (ImportWaiter.FAILED.equals(record.getStatus()) && record.getMessage() != null) {
+                path = path + " (" + record.getMessage() + ")";
+            }
+            lines.add(String.format("%-36s  %-10s  %10s  %s", record.getId(), record.getStatus(), ImportStatus.formatDuration(job.getElapsed(now)), path));
+        }
+        if (jobs.size() > maxRows) {
+            lines.add(String.format("... and %d more", jobs.size() - maxRows));
+        }
+        return lines;
+    }
+
+    /**
+     * Orders running jobs before queued ones, and both before failed ones.
+     */
+    private static int statusOrder(String status) {
+        if (ImportWaiter.FAILED.equals(status)) {
+            return 2;
+        }
+        return status != null && status.toUpperCase(Locale.ROOT).contains("RUNNING") ? 0 : 1;
+    }
+
+    /**
+     * Rewrites only the lines of the screen that differ from the previous redraw, and clears the lines that are no longer used.
+     */
+    private void redraw(List<String> lines) {
+        var out = new StringBuilder();
+        for (int i = 0; i < Math.max(lines.size(), screen.size()); i++) {
+            var line = i < lines.size() ? lines.get(i) : "";
+            if (i < screen.size() && screen.get(i).equals(line)) {
+                continue;
+            }
+            out.append(ESC).append(i + 1).append(";1H").append(line).append(ESC).append('K');
+        }
+        screen.clear();
+        screen.addAll(lines);
+        System.out.print(out);
+        System.out.flush();
+    }
+
+    private void printChanges(ObjectMapper objectMapper, JobTracker tracker, List<Change> changes, Instant now, String error) {
+        var out = System.out;
+        try {
+            for (var change : changes) {
+                var node = objectMapper.createObjectNode();
+                node.put("event", change.getType().name().toLowerCase(Locale.ROOT));
+                node.put("time", now.toString());
+                node.set("job", objectMapper.valueToTree(change.getJob().getJobStatusDto()));
+                out.println(objectMapper.writeValueAsString(node));
+            }
+            var stats = objectMapper.createObjectNode();
+            stats.put("event", "stats");
+            stats.put("time", now.toString());
+            var counts = stats.putObject("counts");
+            tracker.getCounts().forEach(counts::put);
+            stats.put("jobsPerMinute", tracker.getJobsPerMinute(now));
+            if (error != null) {
+                stats.put("error", error);
+            }
+            out.println(objectMapper.writeValueAsString(stats));
+        }
+        catch (JsonProcessingException e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.core.BatchValidator;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@Command(name = "validate",
+         mixinStandardHelpOptions = true,
+         description = "Check a batch or object for problems that would make its import fail, without submitting it. Exits with 1 if errors are found; warnings are only reported.")
+@RequiredArgsConstructor
+public class ImportValidate implements Callable<Integer> {
+    private final Context context;
+
+    @Parameters(index = "0",
+                paramLabel = "path",
+                description = "The path to the object or batch of objects to check.")
+    private Path path;
+
+    @Option(names = { "-s", "--single-object" },
+            description = "The path parameter points to a single object import directory (by default path points to a batch directory).")
+    private boolean singleObject;
+
+    @Option(names = { "-t", "--threads" },
+            description = "The number of threads to walk the tree with. Default: the number of available processors.")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @Override
+    public Integer call() {
+        if (threads < 1) {
+            System.err.println("Number of threads must be at least 1.");
+            return 1;
+        }
+        return validate(context, path, singleObject, threads) ? 0 : 1;
+    }
+
+    /**
+     * Validates the batch or object, and reports the problems found.
+     *
+     * @return whether no errors were found
+     */
+    static boolean validate(Context context, Path path, boolean singleObject, int threads) {
+        if (!Files.isDirectory(path)) {
+            System.err.printf("%s: not an existing directory%n", path);
+            return false;
+        }
+        var importAreaConfig = context.getImportAreaConfig();
+        var validator = new BatchValidator(threads,
+            CopyBatch.getPermissions(importAreaConfig.getFileMode()),
+            CopyBatch.getPermissions(importAreaConfig.getDirectoryMode()));
+        BatchValidator.Result result;
+        try {
+            result = validator.validate(path, singleObject);
+        }
+        catch (IOException e) {
+            System.err.printf("%s: could not be validated: %s%n", path, e.getMessage());
+            return false;
+        }
+        for (var problem : result.getProblems()) {
+            System.err.printf("%s %s: %s%n", problem.getSeverity(), path.resolve(problem.getPath()).normalize(), problem.getMessage());
+        }
+        var errors = result.getErrors();
+        System.err.printf("Validated %s: %d objects, %d files; %d errors, %d warnings%n", path, result.getObjects(), result.getFiles(), errors,
+            result.getProblems().size() - errors);
+        return result.isValid();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import lombok.RequiredArgsConstructor;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.core.ImportWaiter;
+import nl.knaw.dans.datavaultcli.core.ImportWaiter.JobOutcome;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+@Command(name = "wait",
+         mixinStandardHelpOptions = true,
+         description = "Wait for jobs to finish. Exits with 0 if all jobs succeeded, 1 if any job failed and 2 if the timeout expired before all jobs finished.")
+@RequiredArgsConstructor
+public class ImportWait implements Callable<Integer> {
+    static final int EXIT_TIMEOUT = 2;
+
+    private final Context context;
+
+    @Parameters(index = "0",
+                arity = "1..*",
+                paramLabel = "id",
+                description = "The ids of the jobs.")
+    private List<UUID> ids;
+
+    @Option(names = { "--timeout" },
+            paramLabel = "seconds",
+            description = "The maximum number of seconds to wait. Default: wait indefinitely.")
+    private Long timeout;
+
+    @Option(names = { "--max-interval" },
+            paramLabel = "seconds",
+            description = "The maximum number of seconds between polls. Polling starts every second and slows down to this interval. Default: ${DEFAULT-VALUE}",
+            defaultValue = "60")
+    private long maxInterval;
+
+    @Override
+    public Integer call() throws Exception {
+        return waitForJobs(context, ids, timeout, maxInterval);
+    }
+
+    /**
+     * Waits for the jobs, reporting each job when it finishes, and a summary at the end.
+     *
+     * @return the exit code
+     */
+    static int waitForJobs(Context context, List<UUID> ids, Long timeout, long maxInterval) throws InterruptedException {
+        if (!checkOptions(timeout, maxInterval)) {
+            return 1;
+        }
+        var finished = new AtomicInteger();
+        var outcomes = createWaiter(context, maxInterval).waitFor(ids, timeout == null ? null : Duration.ofSeconds(timeout),
+            outcome -> printOutcome(outcome, finished.incrementAndGet(), ids.size()));
+        return report(outcomes, false);
+    }
+
+    /**
+     * Waits for jobs that are still being submitted, reporting each job when it finishes, and a summary at the end.
+     *
+     * @param ids        the ids of the jobs; ids may be added while waiting
+     * @param complete   returns true once no more ids will be added
+     * @param submitted  returns the number of jobs submitted so far
+     * @param onFinished called with the id of each job when it has finished
+     * @return the exit code
+     */
+    static int waitForJobs(Context context, Queue<UUID> ids, BooleanSupplier complete, IntSupplier submitted, Long timeout, long maxInterval, Consumer<UUID> onFinished)
+        throws InterruptedException {
+        if (!checkOptions(timeout, maxInterval)) {
+            return 1;
+        }
+        var finished = new AtomicInteger();
+        var outcomes = createWaiter(context, maxInterval).waitFor(ids, complete, timeout == null ? null : Duration.ofSeconds(timeout), outcome -> {
+            onFinished.accept(outcome.getId());
+            printOutcome(outcome, finished.incrementAndGet(), submitted.getAsInt());
+        });
+        // Checked in this order, so that an id added just before completion is not missed
+        var stillSubmitting = !complete.getAsBoolean() || !ids.isEmpty();
+        return report(outcomes, stillSubmitting);
+    }
+
+    static boolean checkOptions(Long timeout, long maxInterval) {
+        if (timeout != null && timeout < 0) {
+            System.err.println("Timeout must not be negative.");
+            return false;
+        }
+        if (maxInterval < 1) {
+            System.err.println("Maximum interval must be at least 1 second.");
+            return false;
+        }
+        return true;
+    }
+
+    private static ImportWaiter createWaiter(Context context, long maxInterval) {
+        return new ImportWaiter(context.getApi(), ImportWaiter.DEFAULT_INITIAL_INTERVAL, Duration.ofSeconds(maxInterval));
+    }
+
+    /**
+     * @param stillSubmitting whether jobs were still being submitted when waiting stopped; those jobs are not among the outcomes
+     */
+    private static int report(List<JobOutcome> outcomes, boolean stillSubmitting) {
+        var succeeded = outcomes.stream().filter(JobOutcome::isSuccessful).count();
+        var unfinished = outcomes.stream().filter(outcome -> !outcome.isFinished()).count();
+        var failed = outcomes.size() - succeeded - unfinished;
+        System.err.printf("%d jobs succeeded, %d failed, %d unfinished%n", succeeded, failed, unfinished);
+        if (stillSubmitting) {
+            System.err.println("The timeout expired before all jobs were submitted.");
+        }
+        if (failed > 0) {
+            return 1;
+        }
+        return unfinished > 0 || stillSubmitting ? EXIT_TIMEOUT : 0;
+    }
+
+    private static void printOutcome(JobOutcome outcome, int finished, int total) {
+        if (outcome.getMessage() == null) {
+            System.err.printf("[%d/%d] Job %s finished: %s%n", finished, total, outcome.getId(), outcome.getStatus());
+        }
+        else {
+            System.err.printf("[%d/%d] Job %s finished: %s (%s)%n", finished, total, outcome.getId(), outcome.getStatus(), outcome.getMessage());
+        }
+    }
+}
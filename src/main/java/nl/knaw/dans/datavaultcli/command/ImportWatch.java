@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.core.BatchWatcher;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter.Submission;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+@Slf4j
+@Command(name = "watch",
+         mixinStandardHelpOptions = true,
+         description = "Watch a directory in the import area and start an import job for each new batch in it as soon as the batch is complete. A batch for which, or for an "
+             + "object in which, an import job already exists is skipped, so that the shards of 'import start --shard' and the objects imported by 'copy-batch --import' are "
+             + "not imported twice. Runs until interrupted.")
+@RequiredArgsConstructor
+public class ImportWatch implements Callable<Integer> {
+    /**
+     * The names of the batches for which a job was submitted, one per line, kept in the watched directory so that a restarted watcher does not submit them again.
+     */
+    static final String SUBMITTED_FILENAME = ".import-watch.submitted";
+
+    private final Context context;
+
+    @Parameters(index = "0",
+                paramLabel = "path",
+                arity = "0..1",
+                description = "The directory inside the import area to watch. Default: the import area itself.")
+    private Path path;
+
+    @Option(names = { "-s", "--single-object" },
+            description = "The new directories are single object import directories rather than batch directories.")
+    private boolean singleObject;
+
+    @Option(names = { "--marker" },
+            paramLabel = "name",
+            description = "Consider a batch complete when it contains a file with this name. By default, a batch is complete when it has not changed during the quiet period.")
+    private String marker;
+
+    @Option(names = { "--quiet-period" },
+            paramLabel = "seconds",
+            description = "Without --marker, the number of seconds during which a batch must not change to be considered complete. Default: ${DEFAULT-VALUE}",
+            defaultValue = "30")
+    private long quietPeriod;
+
+    @Option(names = { "--scan-interval" },
+            paramLabel = "seconds",
+            description = "The number of seconds between listings of the directory. New batches are normally noticed immediately; the listing catches those created by other "
+                + "hosts on a network file system. Default: ${DEFAULT-VALUE}",
+            defaultValue = "60")
+    private long scanInterval;
+
+    @Option(names = { "--poll" },
+            description = "Only list the directory every scan interval, without watching it for changes. Use this, with a short scan interval, if watching does not work on the "
+                + "file system.")
+    private boolean poll;
+
+    @Option(names = { "--skip-existing" },
+            description = "Do not submit the batches that are already in the directory when the watcher starts.")
+    private boolean skipExisting;
+
+    @Option(names = { "-p", "--parallelism" },
+            paramLabel = "count",
+            description = "The maximum number of jobs that are submitted at the same time. Default: ${DEFAULT-VALUE}",
+            defaultValue = "4")
+    private int parallelism;
+
+    @Option(names = { "--retries" },
+            paramLabel = "count",
+            description = "The number of times a submission is retried if the service is unreachable or fails with a server error. Default: ${DEFAULT-VALUE}",
+            defaultValue = "3")
+    private int retries;
+
+    private Path submittedFile;
+    private BatchWatcher watcher;
+
+    @Override
+    public Integer call() throws Exception {
+        var importAreaConfig = context.getImportAreaConfig();
+        if (path == null) {
+            path = importAreaConfig.getPath();
+        }
+        if (!path.toAbsolutePath().startsWith(importAreaConfig.getPath().toAbsolutePath())) {
+            System.err.println("Path must be inside the import area.");
+            return 1;
+        }
+        if (!Files.isDirectory(path)) {
+            System.err.println("Path must be an existing directory.");
+            return 1;
+        }
+        if (quietPeriod < 0) {
+            System.err.println("Quiet period must not be negative.");
+            return 1;
+        }
+        if (scanInterval < 1) {
+            System.err.println("Scan interval must be at least 1 second.");
+            return 1;
+        }
+        if (parallelism < 1) {
+            System.err.println("Parallelism must be at least 1.");
+            return 1;
+        }
+        if (retries < 0) {
+            System.err.println("Number of retries must not be negative.");
+            return 1;
+        }
+
+        submittedFile = path.resolve(SUBMITTED_FILENAME);
+        var handled = readSubmitted();
+        if (skipExisting) {
+            try (var entries = Files.list(path)) {
+                entries.filter(Files::isDirectory).forEach(entry -> handled.add(entry.getFileName().toString()));
+            }
+        }
+        watcher = new BatchWatcher(path, marker, Duration.ofSeconds(quietPeriod), Duration.ofSeconds(scanInterval), poll, handled);
+        System.err.printf("Watching %s%s%n", path, marker == null ? String.format("; batches are complete after %d seconds without changes", quietPeriod)
+            : String.format("; batches are complete when they contain %s", marker));
+        try (var submitter = new ImportSubmitter(context.getApi(), parallelism, singleObject, retries, this::submitted)) {
+            watcher.run(batch -> {
+                System.err.printf("Batch %s is complete%n", batch.getFileName());
+                if (hasJobs(batch)) {
+                    return;
+                }
+                try {
+                    submitter.submit(batch);
+                }
+                catch (InterruptedIOException e) {
+                    // The interrupt flag is set again, which stops the watcher
+                    log.debug("Interrupted while submitting {}", batch);
+                }
+            });
+        }
+        return 0;
+    }
+
+    private Set<String> readSubmitted() throws IOException {
+        var submitted = new HashSet<String>();
+        if (Files.exists(submittedFile)) {
+            for (var line : Files.readAllLines(submittedFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    submitted.add(line);
+                }
+            }
+        }
+        return submitted;
+    }
+
+    /**
+     * Checks whether import jobs were already submitted for the batch or the objects in it, by another command. Such a batch is recorded as submitted.
+     */
+    private boolean hasJobs(Path batch) {
+        var batchPath = batch.toAbsolutePath();
+        try {
+            var submitted = context.getApi().importsGet().stream()
+                .anyMatch(job -> job.getPath() != null && Path.of(job.getPath()).startsWith(batchPath));
+            if (submitted) {
+                System.err.printf("Skipping %s: import jobs were already submitted for it or its objects%n", batch);
+                recordSubmitted(batch);
+            }
+            return submitted;
+        }
+        catch (ApiException e) {
+            System.err.printf("Could not check the import jobs for %s: %s; it will be checked again after the next listing of %s%n", batch, e.getMessage(), path);
+            watcher.release(batch);
+            return true;
+        }
+    }
+
+    private synchronized void submitted(Submission submission) {
+        if (!submission.isSuccessful()) {
+            System.err.printf("Could not submit import job for %s: %s; it will be submitted again after the next listing of %s%n", submission.getPath(),
+                submission.getError(), path);
+            watcher.release(submission.getPath());
+            return;
+        }
+        System.err.printf("Submitted import job %s for %s%n", submission.getJobId(), submission.getPath());
+        recordSubmitted(submission.getPath());
+    }
+
+    private synchronized void recordSubmitted(Path batch) {
+        try {
+            Files.writeString(submittedFile, batch.getFileName() + "\n", StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        catch (IOException e) {
+            log.warn("Could not record the submission for {} in {}", batch, submittedFile, e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Limits the number of operations in flight, adapting the limit with additive increase and multiplicative decrease (AIMD), as TCP does with its congestion window. Every
+ * operation that succeeds with a normal latency raises the limit by {@code 1 / limit}, so that it grows by about one per round of operations. An operation that reports overload,
+ * or that succeeds with a latency of more than twice the lowest latency seen, halves the limit. Only operations that were started after the last decrease can cause another
+ * decrease, so that a burst of failures caused by a single overload halves the limit only once.
+ */
+@Slf4j
+public class AimdController {
+    static final double DECREASE_FACTOR = 0.5;
+    static final double LATENCY_TOLERANCE = 2.0;
+    // Below this latency, differences are considered noise
+    static final Duration MIN_LATENCY_THRESHOLD = Duration.ofMillis(100);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private double limit;
+    private int inFlight;
+    private long nextTicket;
+    private long firstTicketAfterDecrease;
+    private Duration lowestLatency;
+
+    /**
+     * @param initialLimit the initial limit
+     * @param minLimit     the lowest limit
+     * @param maxLimit     the highest limit
+     */
+    public AimdController(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= min <= initial <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Waits until the number of operations in flight is below the limit, and starts an operation.
+     *
+     * @return the ticket of the operation, to be passed to {@link #onSuccess(long, Duration)} and {@link #onOverload(long)}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized long acquire() throws InterruptedException {
+        while (inFlight >= getLimit()) {
+            wait();
+        }
+        inFlight++;
+        return nextTicket++;
+    }
+
+    /**
+     * Ends an operation, whatever its outcome.
+     */
+    public synchronized void release() {
+        if (inFlight == 0) {
+            throw new IllegalStateException("No operation in flight");
+        }
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Reports that an operation succeeded. This does not end the operation.
+     *
+     * @param ticket  the ticket of the operation
+     * @param latency the time the operation took
+     */
+    public synchronized void onSuccess(long ticket, Duration latency) {
+        if (lowestLatency == null || latency.compareTo(lowestLatency) < 0) {
+            lowestLatency = latency;
+        }
+        var threshold = Duration.ofNanos((long) (lowestLatency.toNanos() * LATENCY_TOLERANCE));
+        if (latency.compareTo(threshold) > 0 && latency.compareTo(MIN_LATENCY_THRESHOLD) > 0) {
+            decrease(ticket, "latency " + latency.toMillis() + " ms");
+            return;
+        }
+        var oldLimit = getLimit();
+        limit = Math.min(maxLimit, limit + 1 / limit);
+        if (getLimit() > oldLimit) {
+            log.debug("Raised limit to {}", getLimit());
+            notifyAll();
+        }
+    }
+
+    /**
+     * Reports that an operation failed because the other side is overloaded or unreachable. This does not end the operation.
+     *
+     * @param ticket the ticket of the operation
+     */
+    public synchronized void onOverload(long ticket) {
+        decrease(ticket, "overload");
+    }
+
+    private void decrease(long ticket, String reason) {
+        if (ticket < firstTicketAfterDecrease) {
+            return;
+        }
+        limit = Math.max(minLimit, Math.floor(limit * DECREASE_FACTOR));
+        firstTicketAfterDecrease = nextTicket;
+        log.debug("Lowered limit to {} because of {}", getLimit(), reason);
+    }
+
+    /**
+     * @return the current limit
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * @return the number of operations in flight
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts an archive into a target directory, writing each file once and setting its permissions as soon as it has been written. Entries are extracted relative to the target,
+ * and entries that would end up outside of it are refused.
+ * <p>
+ * The entries of a ZIP file are compressed independently and can be found through its central directory, so they are extracted by multiple threads. A TAR file can only be read
+ * from start to end, and a gzipped one is a single compressed stream, so these are extracted by one thread. Links and special files in TAR files are skipped.
+ */
+@Slf4j
+class ArchiveExtractor {
+    private final Path target;
+    private final int threads;
+    private final Set<PosixFilePermission> filePermissions;
+    private final Set<PosixFilePermission> directoryPermissions;
+    private final ChecksumManifest manifest;
+    private final Throttle throttle;
+    private final CopyStatistics statistics;
+
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
+    private final Map<Path, FileTime> directoryLastModifiedTimes = new ConcurrentHashMap<>();
+
+    ArchiveExtractor(Path target, int threads, Set<PosixFilePermission> filePermissions, Set<PosixFilePermission> directoryPermissions, ChecksumManifest manifest,
+        Throttle throttle, CopyStatistics statistics) {
+        // Entries are resolved to normalized paths, which must be compared with a normalized target
+        this.target = target.toAbsolutePath().normalize();
+        this.threads = threads;
+        this.filePermissions = filePermissions;
+        this.directoryPermissions = directoryPermissions;
+        this.manifest = manifest;
+        this.throttle = throttle;
+        this.statistics = statistics;
+    }
+
+    void extract(Path archive, ArchiveFormat format) throws IOException {
+        log.debug("Extracting {} archive {} to {}", format, archive, target);
+        Files.createDirectories(target);
+        Files.setPosixFilePermissions(target, directoryPermissions);
+        createdDirectories.add(target);
+        directoryLastModifiedTimes.put(target, Files.getLastModifiedTime(archive));
+        if (format == ArchiveFormat.ZIP) {
+            extractZip(archive);
+        }
+        else {
+            extractTar(archive, format == ArchiveFormat.TAR_GZ);
+        }
+        // Creating entries changes the last modified time of their parent, so the deepest directories go first
+        var directories = directoryLastModifiedTimes.keySet().stream()
+            .sorted(Comparator.comparingInt(Path::getNameCount).reversed())
+            .toList();
+        for (var directory : directories) {
+            Files.setLastModifiedTime(directory, directoryLastModifiedTimes.get(directory));
+        }
+    }
+
+    private void extractTar(Path archive, boolean gzipped) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(archive), FileDigests.BUFFER_SIZE);
+        if (gzipped) {
+            in = new GZIPInputStream(in, FileDigests.BUFFER_SIZE);
+        }
+        try (var tar = new TarArchiveInputStream(in)) {
+            var entry = tar.getNextEntry();
+            while (entry != null) {
+                var lastModified = FileTime.from(entry.getModTime().toInstant());
+                if (entry.isDirectory()) {
+                    var directory = resolve(entry.getName());
+                    createDirectory(directory);
+                    directoryLastModifiedTimes.put(directory, lastModified);
+                }
+                else if (entry.isFile()) {
+                    writeFile(entry.getName(), tar, lastModified);
+                }
+                else {
+                    log.warn("Skipping {}, which is not a regular file or directory", entry.getName());
+                }
+                entry = tar.getNextEntry();
+            }
+        }
+    }
+
+    private void extractZip(Path archive) throws IOException {
+        try (var zip = new ZipFile(archive.toFile())) {
+            // The workers take the entries from the central directory one at a time, so that they are not all queued as tasks at once
+            var entries = zip.entries();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> workers = new ArrayList<>();
+                for (int i = 0; i < threads; i++) {
+                    workers.add(executor.submit(() -> {
+                        ZipEntry entry;
+                        while ((entry = nextEntry(entries)) != null) {
+                            extractZipEntry(zip, entry);
+                        }
+                        return null;
+                    }));
+                }
+                for (var worker : workers) {
+                    worker.get();
+                }
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IOException("Extracting " + archive + " failed", e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while extracting " + archive, e);
+            }
+            finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static ZipEntry nextEntry(Enumeration<? extends ZipEntry> entries) {
+        synchronized (entries) {
+            return entries.hasMoreElements() ? entries.nextElement() : null;
+        }
+    }
+
+    private void extractZipEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        if (entry.isDirectory()) {
+            var directory = resolve(entry.getName());
+            createDirectory(directory);
+            directoryLastModifiedTimes.put(directory, entry.getLastModifiedTime());
+            return;
+        }
+        try (var in = zip.getInputStream(entry)) {
+            writeFile(entry.getName(), in, entry.getLastModifiedTime());
+        }
+    }
+
+    private void writeFile(String name, InputStream in, FileTime lastModified) throws IOException {
+        var file = resolve(name);
+        createDirectory(file.getParent());
+        throttle.acquireFile();
+        Map<ChecksumAlgorithm, byte[]> checksums;
+        // A new file, in case an existing one is a hard link to a file in another batch
+        Files.deleteIfExists(file);
+        try (var out = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW)) {
+            checksums = FileDigests.copyAndDigest(in, out, manifest.getAlgorithms(), throttle, statistics::bytesTransferred);
+        }
+        Files.setPosixFilePermissions(file, filePermissions);
+        Files.setLastModifiedTime(file, lastModified);
+        if (!checksums.isEmpty()) {
+            manifest.add(target.relativize(file).toString(), checksums);
+        }
+        statistics.fileCopied(Files.size(file));
+    }
+
+    private void createDirectory(Path directory) throws IOException {
+        if (createdDirectories.contains(directory)) {
+            return;
+        }
+        createDirectory(directory.getParent());
+        try {
+            Files.createDirectory(directory);
+        }
+        catch (FileAlreadyExistsException e) {
+            if (!Files.isDirectory(directory)) {
+                throw e;
+            }
+        }
+        Files.setPosixFilePermissions(directory, directoryPermissions);
+        createdDirectories.add(directory);
+    }
+
+    private Path resolve(String name) throws IOException {
+        var path = target.resolve(name).normalize();
+        if (!path.startsWith(target)) {
+            throw new IOException("Archive entry " + name + " is outside of the target directory");
+        }
+        return path;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Getter;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+/**
+ * The archive formats that a batch can be extracted from, recognized by the extension of the file name.
+ */
+public enum ArchiveFormat {
+    TAR(".tar"),
+    TAR_GZ(".tar.gz", ".tgz"),
+    ZIP(".zip");
+
+    @Getter
+    private final List<String> extensions;
+
+    ArchiveFormat(String... extensions) {
+        this.extensions = List.of(extensions);
+    }
+
+    /**
+     * Determines the format of a regular file from its name.
+     *
+     * @param file the file
+     * @return the format, or empty if the file is not a regular file or does not have the extension of a supported format
+     */
+    public static Optional<ArchiveFormat> of(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        var name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Arrays.stream(values())
+            .filter(format -> format.extensions.stream().anyMatch(name::endsWith))
+            .findFirst();
+    }
+
+    /**
+     * The name of the batch in an archive: the file name of the archive without its extension.
+     *
+     * @param file the archive
+     * @return the name of the batch
+     */
+    public String getBatchName(Path file) {
+        var name = file.getFileName().toString();
+        var lowerCaseName = name.toLowerCase(Locale.ROOT);
+        return extensions.stream()
+            .filter(lowerCaseName::endsWith)
+            .findFirst()
+            .map(extension -> name.substring(0, name.length() - extension.length()))
+            .orElse(name);
+    }
+}
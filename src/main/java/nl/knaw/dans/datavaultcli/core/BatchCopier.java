@@ -0,0 +1,371 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Copies a directory tree using a {@link ParallelTreeWalker}, so that files are copied concurrently. Like {@link org.apache.commons.io.FileUtils#copyDirectory(java.io.File, java.io.File)}
+ * it merges into an existing target and preserves the last modified times of files and directories. The permissions of each file and directory are set as soon as it has been created,
+ * so that the target tree does not have to be traversed a second time. How the contents of the files are transferred is determined by the {@link TransferMode}.
+ * <p>
+ * Completed files and directories are recorded in a {@link CopyJournal} in the target, which is removed when the copy succeeds. If a copy is resumed, everything recorded in the
+ * journal is skipped without looking at it again, and everything else is copied anew.
+ * <p>
+ * An incremental copy only copies files that are missing in the target or differ in size or last modified time (or, optionally, checksum) from the source, and removes files and
+ * directories from the target that are no longer in the source.
+ * <p>
+ * If checksum algorithms are given, a {@link ChecksumManifest} is written for the batch. The checksums of copied files are computed while copying, those of unchanged files in an
+ * incremental copy from the target.
+ * <p>
+ * A staged copy is made into a hidden sibling of the target, which is renamed to the target when the copy has completed. Consumers of the parent directory therefore never see a
+ * partially copied batch.
+ * <p>
+ * The number of files and bytes copied per second can be limited with a {@link Throttle}.
+ * <p>
+ * Symbolic links are not followed. A link is copied as a link to the same path, whatever the transfer mode, and is left out of the manifests.
+ * <p>
+ * With a {@link DedupIndex}, the SHA-256 checksums of the files are computed while copying them and recorded in the index. A file of which the index has a file of the same size is
+ * checksummed before copying, and hard-linked to the indexed file if the contents are the same. A linked file shares its permissions and last modified time with the file it is
+ * linked to. They are left as they are, as setting them would change them for that file as well; the indexed file got the configured permissions when it was copied.
+ * <p>
+ * If the source is an archive in one of the {@link ArchiveFormat}s, it is extracted into the target by an {@link ArchiveExtractor} instead. Such a copy cannot be resumed or made
+ * incrementally, and always streams the data, but it can be staged and have manifests.
+ */
+@Slf4j
+@Builder
+public class BatchCopier {
+    @Builder.Default
+    private final int threads = Runtime.getRuntime().availableProcessors();
+    @NonNull
+    private final Set<PosixFilePermission> filePermissions;
+    @NonNull
+    private final Set<PosixFilePermission> directoryPermissions;
+    @Builder.Default
+    private final TransferMode transferMode = TransferMode.AUTO;
+    @Builder.Default
+    private final boolean resume = false;
+    @Builder.Default
+    private final boolean incremental = false;
+    @Builder.Default
+    private final boolean compareChecksums = false;
+    @Builder.Default
+    private final List<ChecksumAlgorithm> manifestAlgorithms = List.of();
+    @Builder.Default
+    private final boolean staged = false;
+    /**
+     * The size from which a file is copied in chunks by multiple threads; 0 means never.
+     */
+    @Builder.Default
+    private final long largeFileThreshold = 0;
+    /**
+     * The index to deduplicate files with, or null to copy all files.
+     */
+    private final DedupIndex dedupIndex;
+    @Builder.Default
+    private final Throttle throttle = Throttle.unlimited();
+    /**
+     * The statistics to update while copying; pass these in to monitor the progress of the copy.
+     */
+    @Builder.Default
+    private final CopyStatistics statistics = new CopyStatistics();
+    /**
+     * Called for each top-level directory of the batch, i.e. each object, as soon as it has been copied completely, while the rest of the batch is still being copied. Not called
+     * for directories that were completed before a resumed copy.
+     */
+    @Builder.Default
+    private final ObjectCopiedListener objectCopiedListener = directory -> {};
+
+    public interface ObjectCopiedListener {
+        /**
+         * @param directory the directory of the object in the target
+         * @throws IOException if handling the object fails, which fails the copy
+         */
+        void objectCopied(Path directory) throws IOException;
+    }
+
+    /**
+     * The directory that a staged copy to the target is made in before it is published.
+     *
+     * @param target the target of the copy
+     * @return the staging directory
+     */
+    public static Path getStagingDirectory(Path target) {
+        return target.resolveSibling("." + target.getFileName() + ".copying");
+    }
+
+    public CopyStatistics copy(Path source, Path target) throws IOException {
+        if (!staged) {
+            return copyTree(source, target);
+        }
+        if (incremental) {
+            throw new IllegalArgumentException("Incremental copying cannot be combined with staging.");
+        }
+        var staging = getStagingDirectory(target);
+        copyTree(source, staging);
+        log.debug("Publishing {} as {}", staging, target);
+        // Replaces the target only if it is an empty directory
+        Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+        if (dedupIndex != null) {
+            dedupIndex.relocate(staging, target);
+        }
+        for (var algorithm : manifestAlgorithms) {
+            Files.move(ChecksumManifest.getManifestFile(staging, algorithm), ChecksumManifest.getManifestFile(target, algorithm), StandardCopyOption.ATOMIC_MOVE);
+        }
+        return statistics;
+    }
+
+    private CopyStatistics copyTree(Path source, Path target) throws IOException {
+        var archiveFormat = ArchiveFormat.of(source);
+        if (archiveFormat.isPresent()) {
+            return extractArchive(source, archiveFormat.get(), target);
+        }
+        var transfer = new FileTransfer(transferMode, source, target, !manifestAlgorithms.isEmpty() || dedupIndex != null, throttle, statistics,
+            largeFileThreshold);
+        if (incremental && transfer.getMode() == TransferMode.MOVE) {
+            throw new IllegalArgumentException("Incremental copying cannot be combined with transfer mode MOVE.");
+        }
+        if (dedupIndex != null && (incremental || !transfer.createsCopy())) {
+            throw new IllegalArgumentException("Deduplication cannot be combined with incremental copying or transfer modes HARDLINK and MOVE.");
+        }
+        log.debug("Copying {} to {} with {} threads, using transfer mode {}", source, target, threads, transfer.getMode());
+        var sourceLastModified = Files.getLastModifiedTime(source);
+        Files.createDirectories(target);
+        try (var journal = CopyJournal.open(target, resume);
+            var manifest = ChecksumManifest.open(target, manifestAlgorithms, resume ? journal : null)) {
+            if (resume) {
+                log.info("Resuming copy to {}; {} entries were already completed", target, journal.getCompletedCount());
+            }
+            new ParallelTreeWalker(threads).walk(source, new CopyingVisitor(source, target, transfer, journal, manifest));
+            journal.delete();
+        }
+        // Removing the journal has touched the target root
+        Files.setLastModifiedTime(target, sourceLastModified);
+        return statistics;
+    }
+
+    private CopyStatistics extractArchive(Path archive, ArchiveFormat format, Path target) throws IOException {
+        if (resume || incremental || dedupIndex != null) {
+            throw new IllegalArgumentException("An archive cannot be extracted incrementally, resumed or deduplicated.");
+        }
+        if (transferMode != TransferMode.AUTO && transferMode != TransferMode.STREAM) {
+            throw new IllegalArgumentException("An archive can only be extracted with transfer mode STREAM.");
+        }
+        try (var manifest = ChecksumManifest.open(target, manifestAlgorithms, null)) {
+            new ArchiveExtractor(target, threads, filePermissions, directoryPermissions, manifest, throttle, statistics).extract(archive, format);
+        }
+        return statistics;
+    }
+
+    @RequiredArgsConstructor
+    private class CopyingVisitor implements ParallelTreeWalker.Visitor {
+        private final Path source;
+        private final Path target;
+        private final FileTransfer transfer;
+        private final CopyJournal journal;
+        private final ChecksumManifest manifest;
+
+        private String relativize(Path path) {
+            return source.relativize(path).toString();
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+            var relativePath = relativize(dir);
+            if (!relativePath.isEmpty() && journal.isCompleted(relativePath)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            var targetDir = target.resolve(relativePath);
+            if (incremental && Files.exists(targetDir, LinkOption.NOFOLLOW_LINKS) && !Files.isDirectory(targetDir, LinkOption.NOFOLLOW_LINKS)) {
+                Files.delete(targetDir);
+                statistics.entryRemoved();
+            }
+            Files.createDirectories(targetDir);
+            Files.setPosixFilePermissions(targetDir, directoryPermissions);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void visitFile(Path file, PosixFileAttributes attrs) throws IOException {
+            var relativePath = relativize(file);
+            if (journal.isCompleted(relativePath)) {
+                return;
+            }
+            var targetFile = target.resolve(relativePath);
+            if (attrs.isSymbolicLink()) {
+                copySymbolicLink(file, targetFile);
+                statistics.fileCopied(0);
+                journal.record(relativePath);
+                return;
+            }
+            if (incremental && isUnchanged(file, attrs, targetFile)) {
+                if (!manifestAlgorithms.isEmpty()) {
+                    manifest.add(relativePath, FileDigests.digest(targetFile, manifestAlgorithms));
+                }
+                statistics.fileUnchanged(attrs.size());
+                journal.record(relativePath);
+                return;
+            }
+            throttle.acquireFile();
+            if (dedupIndex != null) {
+                copyDeduplicated(file, attrs, targetFile, relativePath);
+                return;
+            }
+            if (manifestAlgorithms.isEmpty()) {
+                transfer.transfer(file, targetFile, attrs.size());
+            }
+            else {
+                manifest.add(relativePath, transfer.transfer(file, targetFile, attrs.size(), manifestAlgorithms));
+            }
+            Files.setPosixFilePermissions(targetFile, filePermissions);
+            if (transfer.createsCopy()) {
+                Files.setLastModifiedTime(targetFile, attrs.lastModifiedTime());
+            }
+            statistics.fileCopied(attrs.size());
+            journal.record(relativePath);
+        }
+
+        private void copySymbolicLink(Path link, Path targetLink) throws IOException {
+            if (Files.isDirectory(targetLink, LinkOption.NOFOLLOW_LINKS)) {
+                FileUtils.deleteDirectory(targetLink.toFile());
+                statistics.entryRemoved();
+            }
+            else {
+                Files.deleteIfExists(targetLink);
+            }
+            Files.createSymbolicLink(targetLink, Files.readSymbolicLink(link));
+            if (transfer.getMode() == TransferMode.MOVE) {
+                Files.delete(link);
+            }
+        }
+
+        private void copyDeduplicated(Path file, PosixFileAttributes attrs, Path targetFile, String relativePath) throws IOException {
+            var algorithms = new ArrayList<>(manifestAlgorithms);
+            if (!algorithms.contains(ChecksumAlgorithm.SHA256)) {
+                algorithms.add(ChecksumAlgorithm.SHA256);
+            }
+            Map<ChecksumAlgorithm, byte[]> checksums = null;
+            // Reading a file twice only pays off if there is a candidate to link to
+            if (dedupIndex.hasSize(attrs.size())) {
+                checksums = FileDigests.digest(file, algorithms);
+                if (dedupIndex.link(attrs.size(), checksums.get(ChecksumAlgorithm.SHA256), targetFile)) {
+                    if (!manifestAlgorithms.isEmpty()) {
+                        manifest.add(relativePath, checksums);
+                    }
+                    statistics.fileDeduplicated(attrs.size());
+                    journal.record(relativePath);
+                    return;
+                }
+                transfer.transfer(file, targetFile, attrs.size());
+            }
+            else {
+                checksums = transfer.transfer(file, targetFile, attrs.size(), algorithms);
+            }
+            Files.setPosixFilePermissions(targetFile, filePermissions);
+            Files.setLastModifiedTime(targetFile, attrs.lastModifiedTime());
+            dedupIndex.add(targetFile, checksums.get(ChecksumAlgorithm.SHA256));
+            if (!manifestAlgorithms.isEmpty()) {
+                manifest.add(relativePath, checksums);
+            }
+            statistics.fileCopied(attrs.size());
+            journal.record(relativePath);
+        }
+
+        @Override
+        public void postVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+            var relativePath = relativize(dir);
+            if (incremental) {
+                removeEntriesNotInSource(dir, target.resolve(relativePath), relativePath.isEmpty());
+            }
+            Files.setLastModifiedTime(target.resolve(relativePath), attrs.lastModifiedTime());
+            if (transfer.getMode() == TransferMode.MOVE) {
+                Files.delete(dir);
+            }
+            if (!relativePath.isEmpty()) {
+                journal.record(relativePath);
+            }
+            if (dir.getParent() != null && dir.getParent().equals(source)) {
+                objectCopiedListener.objectCopied(target.resolve(relativePath));
+            }
+        }
+
+        private boolean isUnchanged(Path file, PosixFileAttributes attrs, Path targetFile) throws IOException {
+            PosixFileAttributes targetAttrs;
+            try {
+                targetAttrs = Files.readAttributes(targetFile, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            }
+            catch (NoSuchFileException e) {
+                return false;
+            }
+            if (targetAttrs.isDirectory()) {
+                FileUtils.deleteDirectory(targetFile.toFile());
+                statistics.entryRemoved();
+                return false;
+            }
+            if (targetAttrs.size() != attrs.size()) {
+                return false;
+            }
+            var unchanged = compareChecksums
+                ? Arrays.equals(FileDigests.digest(file, ChecksumAlgorithm.SHA256), FileDigests.digest(targetFile, ChecksumAlgorithm.SHA256))
+                : targetAttrs.lastModifiedTime().toMillis() == attrs.lastModifiedTime().toMillis();
+            if (unchanged && !targetAttrs.permissions().equals(filePermissions)) {
+                Files.setPosixFilePermissions(targetFile, filePermissions);
+            }
+            return unchanged;
+        }
+
+        private void removeEntriesNotInSource(Path sourceDir, Path targetDir, boolean isRoot) throws IOException {
+            List<Path> obsolete = new ArrayList<>();
+            try (var entries = Files.newDirectoryStream(targetDir)) {
+                for (var entry : entries) {
+                    var name = entry.getFileName().toString();
+                    if (!(isRoot && name.equals(CopyJournal.FILENAME)) && !Files.exists(sourceDir.resolve(name), LinkOption.NOFOLLOW_LINKS)) {
+                        obsolete.add(entry);
+                    }
+                }
+            }
+            for (var entry : obsolete) {
+                log.debug("Removing {}, which is not in the source", entry);
+                if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                    FileUtils.deleteDirectory(entry.toFile());
+                }
+                else {
+                    Files.delete(entry);
+                }
+                statistics.entryRemoved();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipFile;
+
+/**
+ * The number of files and directories in a tree and the total size of the files, as found by a parallel scan of the metadata only. For an archive, the entries of the archive are
+ * counted; for a ZIP file, these are read from its central directory, but a TAR file must be read completely (and a gzipped one decompressed) to find them, which takes about
+ * as long as extracting it.
+ */
+@Value
+public class BatchScan {
+    long files;
+    long directories;
+    long bytes;
+
+    public static BatchScan scan(Path root, int threads) throws IOException {
+        return scan(root, threads, Set.of());
+    }
+
+    /**
+     * Scans what remains to be copied of a tree, leaving out the entries that a resumed copy will skip.
+     *
+     * @param root      the root of the tree
+     * @param threads   the number of threads to scan with
+     * @param completed the paths, relative to the root, of the files and directories that have already been copied (see {@link CopyJournal#readCompleted(Path)})
+     * @return the scan
+     * @throws IOException if the tree cannot be scanned
+     */
+    public static BatchScan scan(Path root, int threads, Set<String> completed) throws IOException {
+        var format = ArchiveFormat.of(root);
+        if (format.isPresent()) {
+            return scanArchive(root, format.get());
+        }
+        var files = new LongAdder();
+        var directories = new LongAdder();
+        var bytes = new LongAdder();
+        new ParallelTreeWalker(threads).walk(root, new ParallelTreeWalker.Visitor() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) {
+                if (completed.contains(root.relativize(dir).toString())) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                directories.increment();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) {
+                if (completed.contains(root.relativize(file).toString())) {
+                    return;
+                }
+                files.increment();
+                // The size of a symbolic link is that of the path it contains
+                if (attrs.isRegularFile()) {
+                    bytes.add(attrs.size());
+                }
+            }
+        });
+        return new BatchScan(files.sum(), directories.sum(), bytes.sum());
+    }
+
+    private static BatchScan scanArchive(Path archive, ArchiveFormat format) throws IOException {
+        // Archives need not have entries for all directories, so these are derived from the paths of the files as well
+        var directories = new HashSet<String>();
+        var files = 0L;
+        var bytes = 0L;
+        if (format == ArchiveFormat.ZIP) {
+            try (var zip = new ZipFile(archive.toFile())) {
+                var entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    var entry = entries.nextElement();
+                    if (entry.isDirectory()) {
+                        addDirectory(directories, Path.of(entry.getName()));
+                    }
+                    else {
+                        addDirectory(directories, Path.of(entry.getName()).getParent());
+                        files++;
+                        bytes += Math.max(entry.getSize(), 0);
+                    }
+                }
+            }
+        }
+        else {
+            InputStream in = new BufferedInputStream(Files.newInputStream(archive), FileDigests.BUFFER_SIZE);
+            if (format == ArchiveFormat.TAR_GZ) {
+                in = new GZIPInputStream(in, FileDigests.BUFFER_SIZE);
+            }
+            try (var tar = new TarArchiveInputStream(in)) {
+                var entry = tar.getNextEntry();
+                while (entry != null) {
+                    if (entry.isDirectory()) {
+                        addDirectory(directories, Path.of(entry.getName()));
+                    }
+                    else if (entry.isFile()) {
+                        addDirectory(directories, Path.of(entry.getName()).getParent());
+                        files++;
+                        bytes += entry.getSize();
+                    }
+                    entry = tar.getNextEntry();
+                }
+            }
+        }
+        // Plus the root
+        return new BatchScan(files, directories.size() + 1, bytes);
+    }
+
+    private static void addDirectory(Set<String> directories, Path directory) {
+        while (directory != null && !directory.normalize().toString().isEmpty() && directories.add(directory.normalize().toString())) {
+            directory = directory.getParent();
+        }
+    }
+}
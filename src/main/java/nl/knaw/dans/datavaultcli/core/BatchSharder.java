@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Splits a batch directory into smaller batches, so that they can be imported as separate jobs. The shards are created next to the batch and the object directories are renamed
+ * into them, so that no data is copied. The objects are distributed in the order of their names, each shard getting a contiguous range. Files in the batch directory that are not
+ * object directories are left where they are; the batch directory is removed if it is empty afterwards.
+ */
+@Slf4j
+public class BatchSharder {
+    private BatchSharder() {
+    }
+
+    /**
+     * Splits the batch into the given number of shards, or into as many shards as there are objects if that is fewer.
+     *
+     * @param batch  the batch directory
+     * @param shards the number of shards
+     * @return the shard directories, or the batch itself if it is not split
+     * @throws IOException if the batch cannot be split; the objects that were already moved are moved back
+     */
+    public static List<Path> splitInto(Path batch, int shards) throws IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Number of shards must be at least 1");
+        }
+        var objects = listObjects(batch);
+        return split(batch, objects, Math.min(shards, objects.size()));
+    }
+
+    /**
+     * Splits the batch into shards of at most the given number of objects.
+     *
+     * @param batch      the batch directory
+     * @param maxObjects the maximum number of objects per shard
+     * @return the shard directories, or the batch itself if it is not split
+     * @throws IOException if the batch cannot be split; the objects that were already moved are moved back
+     */
+    public static List<Path> splitBySize(Path batch, int maxObjects) throws IOException {
+        if (maxObjects < 1) {
+            throw new IllegalArgumentException("Maximum number of objects per shard must be at least 1");
+        }
+        var objects = listObjects(batch);
+        return split(batch, objects, (objects.size() + maxObjects - 1) / maxObjects);
+    }
+
+    private static List<Path> listObjects(Path batch) throws IOException {
+        try (var entries = Files.list(batch)) {
+            return entries
+                .filter(entry -> Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS))
+                .sorted()
+                .toList();
+        }
+    }
+
+    private static List<Path> split(Path batch, List<Path> objects, int shards) throws IOException {
+        if (shards <= 1) {
+            return List.of(batch);
+        }
+        var digits = String.valueOf(shards).length();
+        var shardDirs = new ArrayList<Path>();
+        for (int i = 1; i <= shards; i++) {
+            var shardDir = batch.resolveSibling(String.format("%s-shard-%0" + digits + "d", batch.getFileName(), i));
+            if (Files.exists(shardDir, LinkOption.NOFOLLOW_LINKS)) {
+                throw new FileAlreadyExistsException(shardDir.toString());
+            }
+            shardDirs.add(shardDir);
+        }
+
+        var permissions = Files.getPosixFilePermissions(batch);
+        Map<Path, Path> moved = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < shards; i++) {
+                var shardDir = shardDirs.get(i);
+                Files.createDirectory(shardDir, PosixFilePermissions.asFileAttribute(permissions));
+                // The sizes of the shards differ by at most one
+                var from = (int) ((long) objects.size() * i / shards);
+                var to = (int) ((long) objects.size() * (i + 1) / shards);
+                for (var object : objects.subList(from, to)) {
+                    var target = shardDir.resolve(object.getFileName());
+                    Files.move(object, target, StandardCopyOption.ATOMIC_MOVE);
+                    moved.put(target, object);
+                }
+            }
+        }
+        catch (IOException e) {
+            rollBack(moved, shardDirs);
+            throw e;
+        }
+        try (var remaining = Files.list(batch)) {
+            var others = remaining.map(entry -> entry.getFileName().toString()).collect(Collectors.joining(", "));
+            if (others.isEmpty()) {
+                Files.delete(batch);
+            }
+            else {
+                log.warn("Left entries that are not object directories in {}: {}", batch, others);
+            }
+        }
+        log.debug("Split {} objects of {} into {} shards", objects.size(), batch, shards);
+        return shardDirs;
+    }
+
+    private static void rollBack(Map<Path, Path> moved, List<Path> shardDirs) {
+        for (var entry : moved.entrySet()) {
+            try {
+                Files.move(entry.getKey(), entry.getValue(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (IOException e) {
+                log.error("Could not move {} back to {}", entry.getKey(), entry.getValue(), e);
+            }
+        }
+        for (var shardDir : shardDirs) {
+            try {
+                Files.deleteIfExists(shardDir);
+            }
+            catch (IOException e) {
+                log.error("Could not remove shard {}", shardDir, e);
+            }
+        }
+    }
+}
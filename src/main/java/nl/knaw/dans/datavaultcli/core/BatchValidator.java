@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Checks a batch, or a single object, before it is imported, so that problems that would make the import job fail are found before it is submitted. The tree is walked in
+ * parallel. Each object directory must contain version directories named {@code v<N>} with consecutive numbers; everything in it must be readable, have a name that the service
+ * can store and have the permissions configured for the import area. Empty files and version directories, unexpected entries in object directories and symbolic links in objects
+ * are reported as warnings. Links are not followed, so their targets are not checked; {@code copy-batch} copies them as links.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class BatchValidator {
+    private static final Pattern VERSION_DIRECTORY = Pattern.compile("v([1-9][0-9]*)");
+    private static final int MAX_NAME_BYTES = 255;
+
+    private final int threads;
+    @NonNull
+    private final Set<PosixFilePermission> filePermissions;
+    @NonNull
+    private final Set<PosixFilePermission> directoryPermissions;
+
+    public enum Severity {
+        /**
+         * The import job is expected to fail.
+         */
+        ERROR,
+        /**
+         * The import job may succeed, but the result is probably not what was intended.
+         */
+        WARNING
+    }
+
+    @Value
+    public static class Problem {
+        String path;
+        Severity severity;
+        String message;
+    }
+
+    @Value
+    public static class Result {
+        long objects;
+        long files;
+        /**
+         * The problems, ordered by path.
+         */
+        List<Problem> problems;
+
+        public long getErrors() {
+            return problems.stream().filter(problem -> problem.getSeverity() == Severity.ERROR).count();
+        }
+
+        public boolean isValid() {
+            return getErrors() == 0;
+        }
+    }
+
+    /**
+     * Validates a batch or a single object.
+     *
+     * @param root         the batch directory, or the object directory if {@code singleObject} is set
+     * @param singleObject whether root is a single object rather than a batch
+     * @return the result
+     * @throws IOException if the tree cannot be walked
+     */
+    public Result validate(Path root, boolean singleObject) throws IOException {
+        log.debug("Validating {} with {} threads", root, threads);
+        var objectDepth = singleObject ? 0 : 1;
+        var objects = new LongAdder();
+        var files = new LongAdder();
+        var problems = Collections.synchronizedList(new ArrayList<Problem>());
+        new ParallelTreeWalker(threads).walk(root, new ParallelTreeWalker.Visitor() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+                var depth = depth(dir);
+                if (depth > 0) {
+                    checkName(dir);
+                }
+                if (!Files.isReadable(dir) || !Files.isExecutable(dir)) {
+                    add(dir, Severity.ERROR, "directory cannot be read");
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                checkPermissions(dir, attrs, directoryPermissions);
+                if (depth == objectDepth) {
+                    objects.increment();
+                    checkObject(dir);
+                }
+                else if (depth == objectDepth + 1 && VERSION_DIRECTORY.matcher(dir.getFileName().toString()).matches()) {
+                    try (var entries = Files.list(dir)) {
+                        if (entries.findAny().isEmpty()) {
+                            add(dir, Severity.WARNING, "empty version directory");
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) {
+                files.increment();
+                checkName(file);
+                var depth = depth(file);
+                if (depth <= objectDepth) {
+                    if (file.getFileName().toString().equals(CopyJournal.FILENAME)) {
+                        add(file, Severity.ERROR, "copy-batch has not completed");
+                    }
+                    else {
+                        add(file, Severity.ERROR, "not an object directory");
+                    }
+                    return;
+                }
+                // Also links to directories, which the walk does not follow
+                if (attrs.isSymbolicLink()) {
+                    add(file, Severity.WARNING, Files.exists(file) ? "symbolic link" : "dangling symbolic link");
+                    return;
+                }
+                if (!attrs.isRegularFile()) {
+                    add(file, Severity.ERROR, "not a regular file");
+                    return;
+                }
+                if (!Files.isReadable(file)) {
+                    add(file, Severity.ERROR, "file cannot be read");
+                }
+                if (attrs.size() == 0) {
+                    add(file, Severity.WARNING, "empty file");
+                }
+                checkPermissions(file, attrs, filePermissions);
+            }
+
+            private int depth(Path path) {
+                return path.equals(root) ? 0 : root.relativize(path).getNameCount();
+            }
+
+            private void checkObject(Path dir) throws IOException {
+                var versions = new TreeSet<Integer>();
+                try (var entries = Files.newDirectoryStream(dir)) {
+                    for (var entry : entries) {
+                        var matcher = VERSION_DIRECTORY.matcher(entry.getFileName().toString());
+                        if (matcher.matches() && Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                            versions.add(Integer.parseInt(matcher.group(1)));
+                        }
+                        else {
+                            add(entry, Severity.WARNING, "unexpected entry in object directory; expected only version directories v<N>");
+                        }
+                    }
+                }
+                if (versions.isEmpty()) {
+                    add(dir, Severity.ERROR, "object directory has no version directories");
+                }
+                else if (versions.last() - versions.first() + 1 != versions.size()) {
+                    add(dir, Severity.ERROR, "version directories are not consecutive: " + versions);
+                }
+            }
+
+            private void checkName(Path path) {
+                var name = path.getFileName().toString();
+                // Bytes that are not valid in the file name encoding are decoded as the replacement character
+                if (name.indexOf('\uFFFD') >= 0) {
+                    add(path, Severity.ERROR, "name is not valid UTF-8");
+                }
+                else if (name.chars().anyMatch(Character::isISOControl)) {
+                    add(path, Severity.ERROR, "name contains control characters");
+                }
+                else if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES) {
+                    add(path, Severity.ERROR, "name is longer than " + MAX_NAME_BYTES + " bytes");
+                }
+                else if (!name.equals(name.strip())) {
+                    add(path, Severity.WARNING, "name starts or ends with whitespace");
+                }
+            }
+
+            private void checkPermissions(Path path, PosixFileAttributes attrs, Set<PosixFilePermission> expected) {
+                if (!attrs.permissions().equals(expected)) {
+                    add(path, Severity.ERROR, String.format("permissions %s instead of %s", PosixFilePermissions.toString(attrs.permissions()),
+                        PosixFilePermissions.toString(expected)));
+                }
+            }
+
+            private void add(Path path, Severity severity, String message) {
+                var relativePath = root.relativize(path).toString();
+                problems.add(new Problem(relativePath.isEmpty() ? "." : relativePath, severity, message));
+            }
+        });
+        var sorted = new ArrayList<>(problems);
+        sorted.sort(Comparator.comparing(Problem::getPath).thenComparing(Problem::getSeverity));
+        return new Result(objects.sum(), files.sum(), sorted);
+    }
+}
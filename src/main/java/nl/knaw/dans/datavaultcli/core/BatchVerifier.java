@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verifies that a target tree is identical to its source. The trees are walked in parallel; for each file the sizes are compared first, and only if they are equal, the SHA-256
+ * checksums of source and target. Entries of the target that are not in the source are reported as well. Permissions and last modified times are not compared. A symbolic link
+ * must be a link to the same path in the target.
+ */
+@Slf4j
+public class BatchVerifier {
+    private final int threads;
+
+    public BatchVerifier(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1");
+        }
+        this.threads = threads;
+    }
+
+    public enum MismatchType {
+        /**
+         * The file or directory is in the source, but not in the target, or of a different type.
+         */
+        MISSING,
+        /**
+         * The file or directory is in the target, but not in the source.
+         */
+        EXTRA,
+        /**
+         * The file has a different size in the target.
+         */
+        SIZE,
+        /**
+         * The file has the same size, but a different checksum in the target.
+         */
+        CONTENT
+    }
+
+    @Value
+    public static class Mismatch {
+        String path;
+        MismatchType type;
+        String detail;
+    }
+
+    @Value
+    public static class Result {
+        long filesVerified;
+        long bytesVerified;
+        /**
+         * The mismatches, ordered by path.
+         */
+        List<Mismatch> mismatches;
+
+        public boolean isIdentical() {
+            return mismatches.isEmpty();
+        }
+    }
+
+    public Result verify(Path source, Path target) throws IOException {
+        log.debug("Verifying {} against {} with {} threads", target, source, threads);
+        var files = new LongAdder();
+        var bytes = new LongAdder();
+        var mismatches = Collections.synchronizedList(new ArrayList<Mismatch>());
+        new ParallelTreeWalker(threads).walk(source, new ParallelTreeWalker.Visitor() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+                var relativePath = source.relativize(dir).toString();
+                var targetDir = target.resolve(relativePath);
+                if (!Files.isDirectory(targetDir, LinkOption.NOFOLLOW_LINKS)) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.MISSING, "directory not found in target"));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                try (var entries = Files.newDirectoryStream(targetDir)) {
+                    for (var entry : entries) {
+                        if (!Files.exists(dir.resolve(entry.getFileName().toString()), LinkOption.NOFOLLOW_LINKS)) {
+                            mismatches.add(new Mismatch(source.relativize(dir.resolve(entry.getFileName().toString())).toString(), MismatchType.EXTRA, "not in source"));
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) throws IOException {
+                var relativePath = source.relativize(file).toString();
+                var targetFile = target.resolve(relativePath);
+                PosixFileAttributes targetAttrs;
+                try {
+                    targetAttrs = Files.readAttributes(targetFile, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                }
+                catch (NoSuchFileException e) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.MISSING, "file not found in target"));
+                    return;
+                }
+                if (attrs.isSymbolicLink()) {
+                    verifySymbolicLink(file, relativePath, targetFile, targetAttrs);
+                    return;
+                }
+                if (!targetAttrs.isRegularFile()) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.MISSING, "not a regular file in target"));
+                    return;
+                }
+                if (targetAttrs.size() != attrs.size()) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.SIZE, String.format("source %d bytes, target %d bytes", attrs.size(), targetAttrs.size())));
+                    return;
+                }
+                var sourceChecksum = FileDigests.digest(file, ChecksumAlgorithm.SHA256);
+                var targetChecksum = FileDigests.digest(targetFile, ChecksumAlgorithm.SHA256);
+                if (!Arrays.equals(sourceChecksum, targetChecksum)) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.CONTENT,
+                        String.format("source sha256 %s, target sha256 %s", HexFormat.of().formatHex(sourceChecksum), HexFormat.of().formatHex(targetChecksum))));
+                    return;
+                }
+                files.increment();
+                bytes.add(attrs.size());
+            }
+
+            private void verifySymbolicLink(Path link, String relativePath, Path targetLink, PosixFileAttributes targetAttrs) throws IOException {
+                if (!targetAttrs.isSymbolicLink()) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.MISSING, "not a symbolic link in target"));
+                    return;
+                }
+                var sourcePath = Files.readSymbolicLink(link);
+                var targetPath = Files.readSymbolicLink(targetLink);
+                if (!sourcePath.equals(targetPath)) {
+                    mismatches.add(new Mismatch(relativePath, MismatchType.CONTENT, String.format("source links to %s, target links to %s", sourcePath, targetPath)));
+                    return;
+                }
+                files.increment();
+            }
+        });
+        var sorted = new ArrayList<>(mismatches);
+        sorted.sort(Comparator.comparing(Mismatch::getPath));
+        return new Result(files.sum(), bytes.sum(), sorted);
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Watches a directory for new subdirectories and reports each of them once it is complete. A subdirectory is complete when it contains the marker file, if one is configured,
+ * or otherwise when its files have not changed during the quiet period. A subdirectory that still contains the journal of a running {@code copy-batch} is never complete.
+ * Directories of which the name starts with a dot, such as those of staged copies, are ignored.
+ * <p>
+ * New subdirectories are noticed through a {@link WatchService}. Since that does not report changes made by other hosts on network file systems, the directory is also listed
+ * periodically; with {@code poll} set, only the listing is used.
+ * <p>
+ * A subdirectory is reported only once, unless it is {@link #release(Path) released}, for example because it could not be submitted.
+ */
+@Slf4j
+public class BatchWatcher {
+    private static final Duration TICK = Duration.ofSeconds(1);
+
+    private final Path directory;
+    private final String marker;
+    private final Duration quietPeriod;
+    private final Duration scanInterval;
+    private final boolean poll;
+    private final Set<String> handled;
+    private final Map<Path, Candidate> candidates = new LinkedHashMap<>();
+
+    private static class Candidate {
+        private Snapshot snapshot;
+        private Instant changed;
+        private Instant nextCheck;
+    }
+
+    /**
+     * The number of files, their total size and their latest modification time; if any of these differs between two checks, the directory has changed.
+     */
+    @Value
+    private static class Snapshot {
+        long files;
+        long bytes;
+        long lastModified;
+    }
+
+    /**
+     * @param directory    the directory to watch
+     * @param marker       the name of the file that marks a subdirectory as complete, or null to use the quiet period
+     * @param quietPeriod  without a marker, the time during which a subdirectory must not change to be complete
+     * @param scanInterval the time between listings of the directory
+     * @param poll         whether to rely on listings only, for file systems on which a {@link WatchService} does not work
+     * @param handled      the names of the subdirectories that must not be reported, for example because they were reported by an earlier run
+     */
+    public BatchWatcher(Path directory, String marker, Duration quietPeriod, Duration scanInterval, boolean poll, Set<String> handled) {
+        if (quietPeriod.isNegative() || scanInterval.isNegative() || scanInterval.isZero()) {
+            throw new IllegalArgumentException("Quiet period must not be negative and scan interval must be positive");
+        }
+        this.directory = directory;
+        this.marker = marker;
+        this.quietPeriod = quietPeriod;
+        this.scanInterval = scanInterval;
+        this.poll = poll;
+        this.handled = ConcurrentHashMap.newKeySet();
+        this.handled.addAll(handled);
+    }
+
+    /**
+     * Watches the directory until the thread is interrupted.
+     *
+     * @param listener called with each complete subdirectory, from the calling thread
+     * @throws IOException if the directory cannot be listed
+     */
+    public void run(Consumer<Path> listener) throws IOException {
+        try (var watchService = poll ? null : openWatchService()) {
+            var nextScan = Instant.MIN;
+            while (!Thread.currentThread().isInterrupted()) {
+                var now = Instant.now();
+                if (!now.isBefore(nextScan)) {
+                    scan(now);
+                    nextScan = now.plus(scanInterval);
+                }
+                if (!awaitEvents(watchService)) {
+                    break;
+                }
+                checkCandidates(Instant.now(), listener);
+            }
+        }
+    }
+
+    /**
+     * Allows a subdirectory that was already reported to be reported again. It becomes a candidate at the next listing of the directory, and is reported once it is complete.
+     * May be called from any thread.
+     *
+     * @param path the subdirectory
+     */
+    public void release(Path path) {
+        handled.remove(path.getFileName().toString());
+    }
+
+    private WatchService openWatchService() {
+        try {
+            var watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+            return watchService;
+        }
+        catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot watch {}, falling back to listing it every {}: {}", directory, scanInterval, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Waits for at most one tick, and adds the directories that were created in the meantime as candidates.
+     *
+     * @return false if interrupted
+     * @throws IOException if the directory cannot be listed after events were lost
+     */
+    private boolean awaitEvents(WatchService watchService) throws IOException {
+        try {
+            if (watchService == null) {
+                Thread.sleep(TICK.toMillis());
+                return true;
+            }
+            var key = watchService.poll(TICK.toMillis(), TimeUnit.MILLISECONDS);
+            if (key != null) {
+                var now = Instant.now();
+                for (var event : key.pollEvents()) {
+                    if (event.context() instanceof Path name) {
+                        addCandidate(directory.resolve(name), now);
+                    }
+                    else {
+                        // Events were lost; the next listing picks up what was missed
+                        scan(now);
+                    }
+                }
+                key.reset();
+            }
+            return true;
+        }
+        catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void scan(Instant now) throws IOException {
+        try (var entries = Files.list(directory)) {
+            entries.forEach(entry -> addCandidate(entry, now));
+        }
+    }
+
+    private void addCandidate(Path path, Instant now) {
+        var name = path.getFileName().toString();
+        if (name.startsWith(".") || handled.contains(name) || candidates.containsKey(path) || !Files.isDirectory(path)) {
+            return;
+        }
+        log.debug("New directory {}", path);
+        var candidate = new Candidate();
+        candidate.changed = now;
+        candidate.nextCheck = now;
+        candidates.put(path, candidate);
+    }
+
+    private void checkCandidates(Instant now, Consumer<Path> listener) throws IOException {
+        var iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            var path = entry.getKey();
+            var candidate = entry.getValue();
+            if (now.isBefore(candidate.nextCheck)) {
+                continue;
+            }
+            if (!Files.isDirectory(path)) {
+                // Removed or renamed before it was complete
+                iterator.remove();
+                continue;
+            }
+            if (isComplete(path, candidate, now)) {
+                iterator.remove();
+                handled.add(path.getFileName().toString());
+                listener.accept(path);
+            }
+        }
+    }
+
+    private boolean isComplete(Path path, Candidate candidate, Instant now) throws IOException {
+        if (Files.exists(path.resolve(CopyJournal.FILENAME))) {
+            return false;
+        }
+        if (marker != null) {
+            return Files.exists(path.resolve(marker));
+        }
+        Snapshot snapshot;
+        try {
+            snapshot = takeSnapshot(path);
+        }
+        catch (NoSuchFileException | UncheckedIOException e) {
+            // Something was removed while walking, so the directory is still changing
+            snapshot = null;
+        }
+        if (snapshot == null || !snapshot.equals(candidate.snapshot)) {
+            candidate.snapshot = snapshot;
+            candidate.changed = now;
+        }
+        // Walking a large directory is expensive, so it is not done on every tick
+        var interval = quietPeriod.dividedBy(3);
+        candidate.nextCheck = now.plus(interval.compareTo(TICK) < 0 ? TICK : interval);
+        return snapshot != null && !now.isBefore(candidate.changed.plus(quietPeriod));
+    }
+
+    private static Snapshot takeSnapshot(Path path) throws IOException {
+        long files = 0;
+        long bytes = 0;
+        long lastModified = 0;
+        try (var entries = Files.walk(path)) {
+            for (var entry : (Iterable<Path>) entries::iterator) {
+                // A link, even a dangling one, counts as it is, without its target
+                var attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                files++;
+                bytes += attributes.isRegularFile() ? attributes.size() : 0;
+                lastModified = Math.max(lastModified, attributes.lastModifiedTime().toMillis());
+            }
+        }
+        return new Snapshot(files, bytes, lastModified);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+@Getter
+@RequiredArgsConstructor
+public enum ChecksumAlgorithm {
+    MD5("md5", "MD5"),
+    SHA1("sha1", "SHA-1"),
+    SHA256("sha256", "SHA-256"),
+    SHA512("sha512", "SHA-512");
+
+    /**
+     * The name used on the command line and in the names of manifest files.
+     */
+    private final String label;
+
+    /**
+     * The name of the {@link MessageDigest} algorithm.
+     */
+    private final String javaName;
+
+    public MessageDigest newDigest() {
+        return FileDigests.newDigest(javaName);
+    }
+
+    public static ChecksumAlgorithm fromLabel(String label) {
+        return Arrays.stream(values())
+            .filter(a -> a.label.equalsIgnoreCase(label))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(String.format("Unknown checksum algorithm: %s. Valid values: %s", label,
+                Arrays.stream(values()).map(ChecksumAlgorithm::getLabel).collect(Collectors.joining(", ")))));
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manifest files with the checksums of the files in a copied batch, one per {@link ChecksumAlgorithm}. They are written next to the target as
+ * {@code <target>.manifest-<algorithm>.txt}, with one line per file: the hexadecimal checksum, two spaces and the path of the file relative to the target, as produced by e.g.
+ * {@code sha256sum}.
+ */
+@Slf4j
+public class ChecksumManifest implements Closeable {
+    private final Map<ChecksumAlgorithm, BufferedWriter> writers = new EnumMap<>(ChecksumAlgorithm.class);
+
+    private ChecksumManifest() {
+    }
+
+    public static Path getManifestFile(Path target, ChecksumAlgorithm algorithm) {
+        return target.resolveSibling(target.getFileName() + ".manifest-" + algorithm.getLabel() + ".txt");
+    }
+
+    /**
+     * Opens the manifest files for the batch copied to the target.
+     *
+     * @param target     the root of the target
+     * @param algorithms the algorithms to create manifests for
+     * @param journal    if resuming, the journal of the copy, in which case only the entries of files recorded as completed in the journal are kept from the existing manifests;
+     *                   otherwise null, in which case existing manifests are replaced
+     * @return the manifest
+     * @throws IOException if a manifest file cannot be read or created
+     */
+    public static ChecksumManifest open(Path target, List<ChecksumAlgorithm> algorithms, CopyJournal journal) throws IOException {
+        var manifest = new ChecksumManifest();
+        try {
+            for (var algorithm : algorithms) {
+                var file = getManifestFile(target, algorithm);
+                if (journal != null && Files.exists(file)) {
+                    keepCompletedEntries(file, journal);
+                    manifest.writers.put(algorithm, Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND));
+                }
+                else {
+                    manifest.writers.put(algorithm, Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+                }
+            }
+        }
+        catch (IOException e) {
+            manifest.close();
+            throw e;
+        }
+        return manifest;
+    }
+
+    private static void keepCompletedEntries(Path file, CopyJournal journal) throws IOException {
+        var filtered = file.resolveSibling(file.getFileName() + ".tmp");
+        var content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        try (var writer = Files.newBufferedWriter(filtered, StandardCharsets.UTF_8)) {
+            var start = 0;
+            int end;
+            // A last line without newline was not completely written
+            while ((end = content.indexOf('\n', start)) >= 0) {
+                var line = content.substring(start, end);
+                var separator = line.indexOf("  ");
+                if (separator > 0 && journal.isCompleted(line.substring(separator + 2))) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+                start = end + 1;
+            }
+        }
+        Files.move(filtered, file, StandardCopyOption.REPLACE_EXISTING);
+        log.debug("Kept entries of completed files in {}", file);
+    }
+
+    public List<ChecksumAlgorithm> getAlgorithms() {
+        return List.copyOf(writers.keySet());
+    }
+
+    /**
+     * Adds the checksums of a file.
+     *
+     * @param relativePath the path of the file relative to the target
+     * @param checksums    the checksum for each of the algorithms of this manifest
+     * @throws IOException if the entries cannot be written
+     */
+    public synchronized void add(String relativePath, Map<ChecksumAlgorithm, byte[]> checksums) throws IOException {
+        for (var entry : writers.entrySet()) {
+            var writer = entry.getValue();
+            writer.write(HexFormat.of().formatHex(checksums.get(entry.getKey())));
+            writer.write("  ");
+            writer.write(relativePath);
+            writer.write('\n');
+            // Like the journal, the manifest must survive the process being killed
+            writer.flush();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        IOException exception = null;
+        for (var writer : writers.values()) {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Which directories in the import area can be deleted because they were imported successfully. A directory qualifies if the service has a job for its path, no job for it is
+ * unfinished and the most recent job for it succeeded. A directory that contains the path of a job that is unfinished, or of which the most recent job did not succeed, does
+ * not qualify, as it holds data that has not been imported. Of the qualifying directories, the most recently imported ones can be kept, as can those imported too recently. A
+ * directory is never deleted together with a directory that contains it; the outer one is deleted as a whole.
+ * <p>
+ * The time a directory was imported is the time its job finished if the service reports it, and otherwise the last modification time of the directory. A directory in which
+ * anything changed after its job finished, for example because a new batch was staged under the same name, does not qualify either. Since {@code copy-batch} gives the
+ * copies the modification times of the source, changes are looked for in the status change times (ctime) of the directories in the tree, which are updated whenever an entry
+ * is added, removed or renamed and cannot be set, and in the modification times of all entries. The ctime of files is not used, as it also changes when a later batch is
+ * deduplicated against the file.
+ */
+@Slf4j
+@Value
+public class CleanupPlan {
+    /**
+     * Orders paths by their names, so that a directory is directly followed by everything inside it. Comparing the complete paths does not, as for example {@code a-b} comes
+     * before {@code a/b}.
+     */
+    private static final Comparator<Path> TREE_ORDER = (path, other) -> {
+        for (int i = 0; i < Math.min(path.getNameCount(), other.getNameCount()); i++) {
+            var result = path.getName(i).compareTo(other.getName(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(path.getNameCount(), other.getNameCount());
+    };
+
+    List<Candidate> toDelete;
+    List<Candidate> kept;
+
+    @Value
+    public static class Candidate {
+        Path path;
+        Instant imported;
+    }
+
+    /**
+     * Selects the directories to delete.
+     *
+     * @param jobs       all jobs known to the service
+     * @param importArea the root of the import area; only directories inside it are considered
+     * @param keepLast   the number of most recently imported directories to keep
+     * @param minAge     the time that must have passed since a directory was imported before it is deleted
+     * @param now        the current time
+     * @return the plan
+     * @throws IOException if a directory cannot be inspected
+     */
+    public static CleanupPlan create(List<JobRecord> jobs, Path importArea, int keepLast, Duration minAge, Instant now) throws IOException {
+        var root = importArea.toAbsolutePath().normalize();
+        var latestJobs = new TreeMap<Path, JobRecord>(TREE_ORDER);
+        var notImported = new TreeSet<Path>(TREE_ORDER);
+        for (var job : jobs) {
+            if (job.getPath() == null) {
+                continue;
+            }
+            var path = Path.of(job.getPath()).toAbsolutePath().normalize();
+            if (!path.startsWith(root) || path.equals(root)) {
+                continue;
+            }
+            if (!job.isFinished()) {
+                notImported.add(path);
+            }
+            // Without creation times the jobs are taken to be listed in the order in which they were created
+            latestJobs.merge(path, job, (previous, next) -> isLater(previous, next) ? previous : next);
+        }
+        latestJobs.forEach((path, job) -> {
+            if (!ImportWaiter.SUCCESS.equals(job.getStatus())) {
+                notImported.add(path);
+            }
+        });
+
+        var candidates = new ArrayList<Candidate>();
+        Path outer = null;
+        for (Map.Entry<Path, JobRecord> entry : latestJobs.entrySet()) {
+            var path = entry.getKey();
+            var job = entry.getValue();
+            // A directory inside another candidate goes with it; in tree order it directly follows that candidate
+            if (outer != null && path.startsWith(outer)) {
+                continue;
+            }
+            if (containsAny(path, notImported) || !Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                continue;
+            }
+            Instant imported;
+            if (job.getFinished() != null) {
+                if (isChangedAfter(path, job.getFinished())) {
+                    log.debug("Not deleting {}, as it changed after its job finished at {}", path, job.getFinished());
+                    continue;
+                }
+                imported = job.getFinished();
+            }
+            else {
+                imported = Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).toInstant();
+            }
+            candidates.add(new Candidate(path, imported));
+            outer = path;
+        }
+        candidates.sort(Comparator.comparing(Candidate::getImported).reversed().thenComparing(Candidate::getPath));
+
+        var toDelete = new ArrayList<Candidate>();
+        var kept = new ArrayList<Candidate>();
+        for (int i = 0; i < candidates.size(); i++) {
+            var candidate = candidates.get(i);
+            if (i < keepLast || candidate.getImported().isAfter(now.minus(minAge))) {
+                kept.add(candidate);
+            }
+            else {
+                toDelete.add(candidate);
+            }
+        }
+        return new CleanupPlan(toDelete, kept);
+    }
+
+    private static boolean isLater(JobRecord job, JobRecord other) {
+        return job.getCreated() != null && other.getCreated() != null && job.getCreated().isAfter(other.getCreated());
+    }
+
+    private static boolean containsAny(Path dir, NavigableSet<Path> paths) {
+        // In tree order, the paths inside the directory come directly after it
+        var next = paths.ceiling(dir);
+        return next != null && next.startsWith(dir);
+    }
+
+    private static boolean isChangedAfter(Path tree, Instant time) throws IOException {
+        var changed = new AtomicBoolean();
+        Files.walkFileTree(tree, new SimpleFileVisitor<>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                return visit(attrs.lastModifiedTime().toInstant().isAfter(time) || getChangeTime(dir, attrs).isAfter(time));
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                return visit(attrs.lastModifiedTime().toInstant().isAfter(time));
+            }
+
+            private FileVisitResult visit(boolean changedAfter) {
+                if (changedAfter) {
+                    changed.set(true);
+                    return FileVisitResult.TERMINATE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return changed.get();
+    }
+
+    private static Instant getChangeTime(Path dir, BasicFileAttributes attrs) throws IOException {
+        try {
+            return ((FileTime) Files.getAttribute(dir, "unix:ctime", LinkOption.NOFOLLOW_LINKS)).toInstant();
+        }
+        catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return attrs.lastModifiedTime().toInstant();
+        }
+    }
+}
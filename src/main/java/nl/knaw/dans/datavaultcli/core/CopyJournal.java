@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only record of the files and directories that have been copied completely, kept in the root of the target. Each entry is a path relative to the root, terminated by a
+ * newline. Every entry is written to the file system as soon as it is recorded, so that it survives the process being killed. An entry that was not completely written is ignored
+ * when the journal is read back.
+ */
+@Slf4j
+public class CopyJournal implements Closeable {
+    public static final String FILENAME = ".copy-batch.journal";
+
+    private final Path file;
+    private final Set<String> completed;
+    private final FileChannel channel;
+
+    private CopyJournal(Path file, Set<String> completed) throws IOException {
+        this.file = file;
+        this.completed = completed;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Opens the journal in the given target directory.
+     *
+     * @param target the root of the target
+     * @param resume whether to read the entries of an existing journal; otherwise an existing journal is discarded
+     * @return the journal
+     * @throws IOException if the journal cannot be read or created
+     */
+    public static CopyJournal open(Path target, boolean resume) throws IOException {
+        var file = target.resolve(FILENAME);
+        Set<String> completed = Set.of();
+        if (resume) {
+            completed = readCompleted(target);
+            log.debug("Read {} completed entries from {}", completed.size(), file);
+        }
+        else {
+            Files.deleteIfExists(file);
+        }
+        return new CopyJournal(file, completed);
+    }
+
+    /**
+     * Reads the entries recorded in the journal in the given target directory, without opening it for writing.
+     *
+     * @param target the root of the target
+     * @return the completed entries, which is empty if there is no journal
+     * @throws IOException if the journal cannot be read
+     */
+    public static Set<String> readCompleted(Path target) throws IOException {
+        var file = target.resolve(FILENAME);
+        Set<String> completed = new HashSet<>();
+        if (Files.exists(file)) {
+            var content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            var lastNewline = content.lastIndexOf('\n');
+            if (lastNewline >= 0) {
+                Collections.addAll(completed, content.substring(0, lastNewline).split("\n"));
+            }
+        }
+        return Collections.unmodifiableSet(completed);
+    }
+
+    /**
+     * Whether the entry was recorded as completed by a previous run.
+     *
+     * @param relativePath the path of the entry relative to the root of the target
+     * @return true if the entry is complete
+     */
+    public boolean isCompleted(String relativePath) {
+        return completed.contains(relativePath);
+    }
+
+    public int getCompletedCount() {
+        return completed.size();
+    }
+
+    /**
+     * Records an entry as completed.
+     *
+     * @param relativePath the path of the entry relative to the root of the target
+     * @throws IOException if the entry cannot be written
+     */
+    public synchronized void record(String relativePath) throws IOException {
+        var buffer = ByteBuffer.wrap((relativePath + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and removes the journal, after the copy has completed successfully.
+     *
+     * @throws IOException if the journal cannot be removed
+     */
+    public void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * What copying a batch requires of the target file system, compared to what that file system has available. The number of free inodes is not available through the JDK; it is
+ * read with {@code stat -f}, and is null if that fails or the file system does not report inodes (as is the case for some NFS servers).
+ */
+@Slf4j
+@Value
+public class CopyPlan {
+    BatchScan scan;
+    long requiredBytes;
+    long requiredInodes;
+    long usableBytes;
+    Long freeInodes;
+
+    /**
+     * Scans the source and inspects the file system that it will be copied to.
+     *
+     * @param source       the source of the copy
+     * @param completed    the entries of the source that a resumed copy will skip
+     * @param fileSystem   a path on the file system that the source will be copied to
+     * @param transferMode the transfer mode that will be used
+     * @param threads      the number of threads to scan the source with
+     * @return the plan
+     * @throws IOException if the source or file system cannot be inspected
+     */
+    public static CopyPlan create(Path source, Set<String> completed, Path fileSystem, TransferMode transferMode, int threads) throws IOException {
+        var scan = BatchScan.scan(source, threads, completed);
+        // Links and renamed files take no space and no new inodes, only the directories do
+        var filesTakeSpace = transferMode != TransferMode.HARDLINK && transferMode != TransferMode.MOVE;
+        var requiredBytes = filesTakeSpace ? scan.getBytes() : 0;
+        var requiredInodes = scan.getDirectories() + (filesTakeSpace ? scan.getFiles() : 0);
+        return new CopyPlan(scan, requiredBytes, requiredInodes, Files.getFileStore(fileSystem).getUsableSpace(), readFreeInodes(fileSystem));
+    }
+
+    public boolean hasEnoughSpace() {
+        return requiredBytes <= usableBytes;
+    }
+
+    public boolean hasEnoughInodes() {
+        return freeInodes == null || requiredInodes <= freeInodes;
+    }
+
+    public boolean fits() {
+        return hasEnoughSpace() && hasEnoughInodes();
+    }
+
+    private static Long readFreeInodes(Path fileSystem) {
+        try {
+            var process = new ProcessBuilder("stat", "--file-system", "--format=%c %d", fileSystem.toString())
+                .redirectErrorStream(true)
+                .start();
+            var output = new String(process.getInputStream().readAllBytes()).trim();
+            if (process.waitFor() != 0) {
+                log.debug("Could not read number of free inodes: {}", output);
+                return null;
+            }
+            var fields = output.split("\\s+");
+            if (Long.parseLong(fields[0]) == 0) {
+                log.debug("File system of {} does not report inodes", fileSystem);
+                return null;
+            }
+            return Long.parseLong(fields[1]);
+        }
+        catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            log.debug("Could not read number of free inodes", e);
+            return null;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what a {@link BatchCopier} did. The counters may be updated concurrently.
+ */
+public class CopyStatistics {
+    private final LongAdder filesCopied = new LongAdder();
+    private final LongAdder bytesCopied = new LongAdder();
+    private final LongAdder filesUnchanged = new LongAdder();
+    private final LongAdder bytesUnchanged = new LongAdder();
+    private final LongAdder entriesRemoved = new LongAdder();
+    private final LongAdder filesDeduplicated = new LongAdder();
+    private final LongAdder bytesDeduplicated = new LongAdder();
+    private final LongAdder bytesTransferred = new LongAdder();
+
+    void fileCopied(long size) {
+        filesCopied.increment();
+        bytesCopied.add(size);
+    }
+
+    void fileUnchanged(long size) {
+        filesUnchanged.increment();
+        bytesUnchanged.add(size);
+    }
+
+    void entryRemoved() {
+        entriesRemoved.increment();
+    }
+
+    void fileDeduplicated(long size) {
+        filesDeduplicated.increment();
+        bytesDeduplicated.add(size);
+    }
+
+    void bytesTransferred(long count) {
+        bytesTransferred.add(count);
+    }
+
+    public long getFilesCopied() {
+        return filesCopied.sum();
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied.sum();
+    }
+
+    /**
+     * The number of files that were not copied, because they were already present and unchanged in the target.
+     *
+     * @return the number of unchanged files
+     */
+    public long getFilesUnchanged() {
+        return filesUnchanged.sum();
+    }
+
+    /**
+     * The number of bytes that did not have to be copied, because the files were already present and unchanged in the target.
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesUnchanged() {
+        return bytesUnchanged.sum();
+    }
+
+    /**
+     * The number of files and directories removed from the target, because they are no longer in the source.
+     *
+     * @return the number of removed entries
+     */
+    public long getEntriesRemoved() {
+        return entriesRemoved.sum();
+    }
+
+    /**
+     * The number of files that were not copied, but hard-linked to an identical file in the import area.
+     *
+     * @return the number of deduplicated files
+     */
+    public long getFilesDeduplicated() {
+        return filesDeduplicated.sum();
+    }
+
+    /**
+     * The number of bytes that were not written, because the files were hard-linked to identical files in the import area.
+     *
+     * @return the number of bytes saved
+     */
+    public long getBytesDeduplicated() {
+        return bytesDeduplicated.sum();
+    }
+
+    /**
+     * The number of bytes of copied files that have been transferred to the target so far. Unlike {@link #getBytesCopied()}, this includes the part of files that are still being
+     * copied.
+     *
+     * @return the number of bytes transferred
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred.sum();
+    }
+}
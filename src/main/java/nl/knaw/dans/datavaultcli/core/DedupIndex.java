@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the contents of the files in the import area, used to hard-link a file that is copied into the import area to an identical file that is already there. It is kept in
+ * the file {@value #FILENAME} in the root of the import area, with one line per file: the SHA-256 checksum, the size, the last modified time in milliseconds and the path relative
+ * to the import area.
+ * <p>
+ * Files in the import area come and go, and could in principle be changed, so an entry is only trusted if its file still has the recorded size and last modified time. Entries of
+ * files that no longer match are dropped. The index is read completely when it is opened and written back when it is closed, under a lock, merging the entries written by other
+ * processes in the meantime.
+ */
+@Slf4j
+public class DedupIndex implements Closeable {
+    public static final String FILENAME = ".copy-batch.dedup-index";
+
+    private final Path root;
+    private final Path file;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Long> sizes = ConcurrentHashMap.newKeySet();
+    private final Set<Key> dropped = ConcurrentHashMap.newKeySet();
+
+    @Value
+    private static class Key {
+        long size;
+        String checksum;
+    }
+
+    @Value
+    private static class Entry {
+        Path path;
+        long lastModified;
+    }
+
+    private DedupIndex(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+        this.file = this.root.resolve(FILENAME);
+    }
+
+    /**
+     * Opens the index of the import area.
+     *
+     * @param importArea the root of the import area
+     * @return the index
+     * @throws IOException if the index cannot be read
+     */
+    public static DedupIndex open(Path importArea) throws IOException {
+        var index = new DedupIndex(importArea);
+        if (Files.exists(index.file)) {
+            index.read(index.entries);
+            index.entries.keySet().forEach(key -> index.sizes.add(key.getSize()));
+            log.debug("Read {} entries from {}", index.entries.size(), index.file);
+        }
+        return index;
+    }
+
+    /**
+     * Whether the index may have a file of the given size. Only for such files it is worthwhile to compute the checksum before copying.
+     *
+     * @param size the size of the file
+     * @return true if a file of this size is in the index
+     */
+    public boolean hasSize(long size) {
+        return sizes.contains(size);
+    }
+
+    /**
+     * Creates the target as a hard link to a file in the index with the given contents.
+     *
+     * @param size     the size of the contents
+     * @param checksum the SHA-256 checksum of the contents
+     * @param target   the file to create; an existing file is replaced
+     * @return true if the link was created; false if no (valid) file with these contents is in the index, or the link could not be created
+     * @throws IOException if an existing target cannot be removed
+     */
+    public boolean link(long size, byte[] checksum, Path target) throws IOException {
+        var key = new Key(size, HexFormat.of().formatHex(checksum));
+        var entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        try {
+            var attrs = Files.readAttributes(entry.getPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (!attrs.isRegularFile() || attrs.size() != size || attrs.lastModifiedTime().toMillis() != entry.getLastModified()) {
+                log.debug("{} has changed since it was indexed", entry.getPath());
+                drop(key, entry);
+                return false;
+            }
+            Files.deleteIfExists(target);
+            Files.createLink(target, entry.getPath());
+            return true;
+        }
+        catch (NoSuchFileException e) {
+            drop(key, entry);
+            return false;
+        }
+        catch (FileSystemException e) {
+            // E.g. the maximum number of links has been reached; a new copy then takes the place of this one
+            log.debug("Could not link {} to {}: {}", target, entry.getPath(), e.getMessage());
+            drop(key, entry);
+            return false;
+        }
+    }
+
+    /**
+     * Adds a file that has been copied into the import area.
+     *
+     * @param file     the file
+     * @param checksum the SHA-256 checksum of the file
+     * @throws IOException if the attributes of the file cannot be read
+     */
+    public void add(Path file, byte[] checksum) throws IOException {
+        var attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        var key = new Key(attrs.size(), HexFormat.of().formatHex(checksum));
+        if (entries.putIfAbsent(key, new Entry(file.toAbsolutePath().normalize(), attrs.lastModifiedTime().toMillis())) == null) {
+            sizes.add(attrs.size());
+            dropped.remove(key);
+        }
+    }
+
+    /**
+     * Changes the paths of the entries for files that have been moved together with a directory.
+     *
+     * @param from the old path of the directory
+     * @param to   the new path of the directory
+     */
+    public void relocate(Path from, Path to) {
+        var absoluteFrom = from.toAbsolutePath().normalize();
+        var absoluteTo = to.toAbsolutePath().normalize();
+        entries.replaceAll((key, entry) -> entry.getPath().startsWith(absoluteFrom)
+            ? new Entry(absoluteTo.resolve(absoluteFrom.relativize(entry.getPath())), entry.getLastModified())
+            : entry);
+    }
+
+    private void drop(Key key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            dropped.add(key);
+        }
+    }
+
+    private void read(Map<Key, Entry> target) throws IOException {
+        try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                var fields = line.split(" ", 4);
+                if (fields.length == 4) {
+                    target.putIfAbsent(new Key(Long.parseLong(fields[1]), fields[0]), new Entry(root.resolve(fields[3]), Long.parseLong(fields[2])));
+                }
+            });
+        }
+    }
+
+    /**
+     * Writes the index back to the import area, together with the entries that other processes have added since it was read.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        var lockFile = root.resolve(FILENAME + ".lock");
+        try (var lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE); var lock = lockChannel.lock()) {
+            if (Files.exists(file)) {
+                read(entries);
+            }
+            dropped.forEach(entries::remove);
+            var temporaryFile = root.resolve(FILENAME + ".tmp");
+            try (var writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+                for (var e : entries.entrySet()) {
+                    if (!Files.exists(e.getValue().getPath(), LinkOption.NOFOLLOW_LINKS)) {
+                        continue;
+                    }
+                    writer.write(String.format("%s %d %d %s\n", e.getKey().getChecksum(), e.getKey().getSize(), e.getValue().getLastModified(),
+                        root.relativize(e.getValue().getPath())));
+                }
+            }
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Wrote {} entries to {}", entries.size(), file);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+class FileDigests {
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileDigests() {
+    }
+
+    static MessageDigest newDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported digest algorithm: " + algorithm, e);
+        }
+    }
+
+    static byte[] digest(Path file, ChecksumAlgorithm algorithm) throws IOException {
+        return digest(file, List.of(algorithm)).get(algorithm);
+    }
+
+    static Map<ChecksumAlgorithm, byte[]> digest(Path file, Collection<ChecksumAlgorithm> algorithms) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return copyAndDigest(in, OutputStream.nullOutputStream(), algorithms, Throttle.unlimited(), n -> {});
+        }
+    }
+
+    /**
+     * Copies the input to the output, computing the checksums from the same buffer as the data is written from.
+     *
+     * @param in         the input
+     * @param out        the output
+     * @param algorithms the algorithms to compute checksums with
+     * @param throttle   the throttle to acquire the bytes written from
+     * @param progress   called with the number of bytes after each write
+     * @return the checksums
+     * @throws IOException if reading or writing fails
+     */
+    static Map<ChecksumAlgorithm, byte[]> copyAndDigest(InputStream in, OutputStream out, Collection<ChecksumAlgorithm> algorithms, Throttle throttle, LongConsumer progress)
+        throws IOException {
+        var digests = new EnumMap<ChecksumAlgorithm, MessageDigest>(ChecksumAlgorithm.class);
+        for (var algorithm : algorithms) {
+            digests.put(algorithm, algorithm.newDigest());
+        }
+        var buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (var digest : digests.values()) {
+                digest.update(buffer, 0, n);
+            }
+            throttle.acquireBytes(n);
+            out.write(buffer, 0, n);
+            progress.accept(n);
+        }
+        var checksums = new EnumMap<ChecksumAlgorithm, byte[]>(ChecksumAlgorithm.class);
+        digests.forEach((algorithm, digest) -> checksums.put(algorithm, digest.digest()));
+        return checksums;
+    }
+}
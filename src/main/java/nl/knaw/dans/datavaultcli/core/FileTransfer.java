@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Transfers single files according to a {@link TransferMode}. {@link TransferMode#AUTO} is resolved when the transfer is created, based on whether source and target are on the same
+ * file system and whether checksums must be computed, which can be done without extra I/O only when copying through the JVM.
+ * <p>
+ * A file of at least the large file threshold that is copied without computing checksums along the way, is copied in chunks of {@value #LARGE_FILE_CHUNK_SIZE} bytes with
+ * positional reads and writes. The chunks are copied by tasks in the current {@link ForkJoinPool}, so that idle copying threads help with a single huge file. The target is
+ * preallocated first (with {@code fallocate}, which the JDK does not offer), so that the file system can lay it out contiguously although it is written out of order.
+ * <p>
+ * The transferred bytes are added to the {@link CopyStatistics} as each chunk is written, so that the progress of a large file can be followed while it is being copied.
+ * <p>
+ * A copy is always written to a new file. An existing target is removed first rather than overwritten, because it may be a hard link to a file in another batch (see
+ * {@link DedupIndex}), which must keep its contents.
+ */
+@Slf4j
+class FileTransfer {
+    // Below this size, starting a cp process costs more than a kernel-side copy
+    private static final long MIN_REFLINK_SIZE = 1024 * 1024;
+    // Granularity with which kernel-side copies are throttled
+    private static final long CHANNEL_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final long LARGE_FILE_CHUNK_SIZE = 64 * 1024 * 1024;
+    private static final int LARGE_FILE_BUFFER_SIZE = 1024 * 1024;
+
+    @Getter
+    private final TransferMode mode;
+    private final Throttle throttle;
+    private final CopyStatistics statistics;
+    private final long largeFileThreshold;
+    private volatile boolean reflinkSupported = true;
+    private volatile boolean fallocateSupported = true;
+
+    /**
+     * @param requestedMode      the requested transfer mode
+     * @param source             the source of the copy
+     * @param target             the target of the copy
+     * @param computesChecksums  whether checksums are computed for the transferred files
+     * @param throttle           the throttle to acquire the transferred bytes from
+     * @param statistics         the statistics to add the transferred bytes to
+     * @param largeFileThreshold the size from which files are copied in parallel chunks, or 0 to copy all files in one piece
+     * @throws IOException if the file systems of source and target cannot be determined
+     */
+    FileTransfer(TransferMode requestedMode, Path source, Path target, boolean computesChecksums, Throttle throttle, CopyStatistics statistics,
+        long largeFileThreshold) throws IOException {
+        this.throttle = throttle;
+        this.statistics = statistics;
+        this.largeFileThreshold = largeFileThreshold;
+        var sameFileSystem = isSameFileSystem(source, target);
+        if (requestedMode == TransferMode.AUTO) {
+            mode = sameFileSystem && !computesChecksums ? TransferMode.CHANNEL : TransferMode.STREAM;
+        }
+        else if ((requestedMode == TransferMode.HARDLINK || requestedMode == TransferMode.MOVE) && !sameFileSystem) {
+            throw new IllegalArgumentException(String.format("Transfer mode %s requires source and target to be on the same file system.", requestedMode));
+        }
+        else {
+            mode = requestedMode;
+        }
+        log.debug("Transfer mode {} resolved to {}", requestedMode, mode);
+    }
+
+    /**
+     * Transfers the file. An existing target file is replaced by a new one.
+     *
+     * @param source the source file
+     * @param target the target file
+     * @param size   the size of the source file
+     * @throws IOException if the transfer fails
+     */
+    void transfer(Path source, Path target, long size) throws IOException {
+        if (createsCopy()) {
+            Files.deleteIfExists(target);
+        }
+        switch (mode) {
+            case CHANNEL:
+                transferWithChannel(source, target, size);
+                break;
+            case REFLINK:
+                if (size < MIN_REFLINK_SIZE || !reflinkSupported || !reflink(source, target)) {
+                    transferWithChannel(source, target, size);
+                }
+                else {
+                    statistics.bytesTransferred(size);
+                }
+                break;
+            case HARDLINK:
+                Files.deleteIfExists(target);
+                Files.createLink(target, source);
+                statistics.bytesTransferred(size);
+                break;
+            case MOVE:
+                Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                statistics.bytesTransferred(size);
+                break;
+            default:
+                if (isLarge(size)) {
+                    transferInChunks(source, target, size);
+                }
+                // Files.copy cannot report progress, so only small files are copied with it
+                else if (throttle.isBytesLimited() || size > CHANNEL_CHUNK_SIZE) {
+                    try (var in = Files.newInputStream(source); var out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+                        FileDigests.copyAndDigest(in, out, List.of(), throttle, statistics::bytesTransferred);
+                    }
+                }
+                else {
+                    Files.copy(source, target);
+                    statistics.bytesTransferred(size);
+                }
+        }
+    }
+
+    /**
+     * Transfers the file and computes its checksums. When streaming, the checksums are computed from the data as it is copied. Otherwise, the target is read after the transfer.
+     *
+     * @param source     the source file
+     * @param target     the target file
+     * @param size       the size of the source file
+     * @param algorithms the algorithms to compute checksums with
+     * @return the checksums
+     * @throws IOException if the transfer fails
+     */
+    Map<ChecksumAlgorithm, byte[]> transfer(Path source, Path target, long size, Collection<ChecksumAlgorithm> algorithms) throws IOException {
+        if (mode == TransferMode.STREAM) {
+            Files.deleteIfExists(target);
+            try (var in = Files.newInputStream(source); var out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+                return FileDigests.copyAndDigest(in, out, algorithms, throttle, statistics::bytesTransferred);
+            }
+        }
+        transfer(source, target, size);
+        return FileDigests.digest(target, algorithms);
+    }
+
+    /**
+     * Whether the target is a new file with its own metadata, as opposed to the source file itself or a link to it.
+     *
+     * @return true if the target is a copy
+     */
+    boolean createsCopy() {
+        return mode != TransferMode.HARDLINK && mode != TransferMode.MOVE;
+    }
+
+    private boolean isLarge(long size) {
+        return largeFileThreshold > 0 && size >= largeFileThreshold;
+    }
+
+    private void transferWithChannel(Path source, Path target, long size) throws IOException {
+        if (isLarge(size)) {
+            transferInChunks(source, target, size);
+            return;
+        }
+        try (var in = FileChannel.open(source, StandardOpenOption.READ); var out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long position = 0;
+            while (position < size) {
+                var count = Math.min(size - position, CHANNEL_CHUNK_SIZE);
+                throttle.acquireBytes(count);
+                var transferred = in.transferTo(position, count, out);
+                if (transferred <= 0) {
+                    // The source has been truncated while it was being copied
+                    throw new EOFException("Unexpected end of file at position " + position + " of " + source);
+                }
+                position += transferred;
+                statistics.bytesTransferred(transferred);
+            }
+        }
+    }
+
+    private void transferInChunks(Path source, Path target, long size) throws IOException {
+        log.debug("Copying {} ({} bytes) in chunks", source, size);
+        try (var in = FileChannel.open(source, StandardOpenOption.READ); var out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            preallocate(target, size);
+            var task = new ChunkTask(in, out, 0, size);
+            try {
+                if (ForkJoinTask.inForkJoinPool()) {
+                    task.invoke();
+                }
+                else {
+                    ForkJoinPool.commonPool().invoke(task);
+                }
+            }
+            catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private void preallocate(Path target, long size) throws IOException {
+        if (!fallocateSupported) {
+            return;
+        }
+        var process = new ProcessBuilder("fallocate", "--length", String.valueOf(size), target.toString())
+            .redirectErrorStream(true)
+            .start();
+        try {
+            var output = new String(process.getInputStream().readAllBytes());
+            if (process.waitFor() != 0 && fallocateSupported) {
+                fallocateSupported = false;
+                log.warn("Could not preallocate large file, copying without preallocation: {}", output.trim());
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while preallocating " + target, e);
+        }
+    }
+
+    /**
+     * Copies a range of a file, splitting it in halves until the parts are at most one chunk. FileChannel's positional reads and writes may proceed concurrently.
+     */
+    @RequiredArgsConstructor
+    private class ChunkTask extends RecursiveAction {
+        private final FileChannel in;
+        private final FileChannel out;
+        private final long start;
+        private final long end;
+
+        @Override
+        protected void compute() {
+            if (end - start > LARGE_FILE_CHUNK_SIZE) {
+                // Split on a chunk boundary, so that the writes stay aligned
+                var chunks = (end - start + LARGE_FILE_CHUNK_SIZE - 1) / LARGE_FILE_CHUNK_SIZE;
+                var middle = start + chunks / 2 * LARGE_FILE_CHUNK_SIZE;
+                invokeAll(new ChunkTask(in, out, start, middle), new ChunkTask(in, out, middle, end));
+                return;
+            }
+            try {
+                copyRange();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void copyRange() throws IOException {
+            var buffer = ByteBuffer.allocateDirect(LARGE_FILE_BUFFER_SIZE);
+            var position = start;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(LARGE_FILE_BUFFER_SIZE, end - position));
+                while (buffer.hasRemaining()) {
+                    if (in.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Unexpected end of file at position " + (position + buffer.position()));
+                    }
+                }
+                buffer.flip();
+                throttle.acquireBytes(buffer.remaining());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer, position + buffer.position());
+                }
+                position += buffer.limit();
+                statistics.bytesTransferred(buffer.limit());
+            }
+        }
+    }
+
+    private boolean reflink(Path source, Path target) throws IOException {
+        var builder = new ProcessBuilder("cp", "--reflink=always", source.toString(), target.toString())
+            .redirectErrorStream(true);
+        // The error message is inspected below
+        builder.environment().put("LC_ALL", "C");
+        var process = builder.start();
+        try {
+            var output = new String(process.getInputStream().readAllBytes());
+            if (process.waitFor() == 0) {
+                return true;
+            }
+            // Other failures, such as a cross-device link, concern this file only
+            if (output.contains("Operation not supported")) {
+                if (reflinkSupported) {
+                    reflinkSupported = false;
+                    log.warn("Reflinks are not supported, falling back to kernel-side copying: {}", output.trim());
+                }
+            }
+            else {
+                log.debug("Could not create reflink for {}, copying it kernel-side: {}", source, output.trim());
+            }
+            // cp may have created the target before failing
+            Files.deleteIfExists(target);
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while creating reflink for " + source, e);
+        }
+    }
+
+    private static boolean isSameFileSystem(Path source, Path target) throws IOException {
+        var existingTarget = target.toAbsolutePath();
+        while (!Files.exists(existingTarget)) {
+            existingTarget = existingTarget.getParent();
+        }
+        return Files.getFileStore(source).equals(Files.getFileStore(existingTarget));
+    }
+}
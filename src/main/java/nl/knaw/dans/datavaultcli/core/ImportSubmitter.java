@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavaultcli.api.ImportCommandDto;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Submits import jobs in the background. At most a fixed number of submissions is in flight; {@link #submit(Path)} blocks until one of them has completed, so that a producer of
+ * paths that is faster than they can be submitted is slowed down rather than building up a queue. A submission that fails because the service is unreachable, overloaded or has an
+ * internal error is retried with exponential backoff; other failures, and failures after the last retry, are reported and do not stop the other submissions.
+ * <p>
+ * Instead of a fixed maximum, the number of submissions in flight can be governed by an {@link AimdController}, which is fed the latency of each submission and the errors that
+ * indicate overload. Optionally, a submitted job keeps occupying its slot until {@link #jobFinished(UUID)} is called for it, so that the limit applies to the jobs that the
+ * service is working on and only grows as fast as jobs complete.
+ */
+@Slf4j
+public class ImportSubmitter implements Closeable {
+    private static final Duration INITIAL_RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final DefaultApi api;
+    private final boolean singleObject;
+    private final int retries;
+    private final Duration initialRetryDelay;
+    private final Semaphore inFlight;
+    private final AimdController controller;
+    private volatile boolean holdUntilFinished;
+    private final Map<UUID, HeldSlot> heldSlots = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final Consumer<Submission> listener;
+    private final List<Submission> submissions = Collections.synchronizedList(new ArrayList<>());
+
+    @Value
+    public static class Submission {
+        Path path;
+        /**
+         * The id of the import job, or null if the submission failed.
+         */
+        UUID jobId;
+        /**
+         * The reason the submission failed, or null if it succeeded.
+         */
+        String error;
+        int attempts;
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+    }
+
+    @Value
+    private static class HeldSlot {
+        long ticket;
+        Duration latency;
+    }
+
+    /**
+     * Creates a submitter for single-object imports, which retries a failed submission three times.
+     *
+     * @param api         the API to submit the jobs to
+     * @param maxInFlight the maximum number of submissions in flight
+     * @param listener    called with each submission when it has completed, from the thread that made it
+     */
+    public ImportSubmitter(DefaultApi api, int maxInFlight, Consumer<Submission> listener) {
+        this(api, maxInFlight, true, 3, listener);
+    }
+
+    /**
+     * @param api          the API to submit the jobs to
+     * @param maxInFlight  the maximum number of submissions in flight
+     * @param singleObject whether the submitted paths are single objects rather than batches
+     * @param retries      the number of times a failed submission is retried
+     * @param listener     called with each submission when it has completed, from the thread that made it
+     */
+    public ImportSubmitter(DefaultApi api, int maxInFlight, boolean singleObject, int retries, Consumer<Submission> listener) {
+        this(api, maxInFlight, singleObject, retries, INITIAL_RETRY_DELAY, listener);
+    }
+
+    /**
+     * @param initialRetryDelay the delay before the first retry, which doubles for every next one; only tests need another delay than the default
+     */
+    ImportSubmitter(DefaultApi api, int maxInFlight, boolean singleObject, int retries, Duration initialRetryDelay, Consumer<Submission> listener) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Maximum number of submissions in flight must be at least 1");
+        }
+        if (retries < 0) {
+            throw new IllegalArgumentException("Number of retries must not be negative");
+        }
+        this.api = api;
+        this.singleObject = singleObject;
+        this.retries = retries;
+        this.initialRetryDelay = initialRetryDelay;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.controller = null;
+        this.executor = Executors.newFixedThreadPool(maxInFlight);
+        this.listener = listener;
+    }
+
+    /**
+     * Creates a submitter of which the number of submissions in flight is governed by the given controller.
+     *
+     * @param api               the API to submit the jobs to
+     * @param controller        the controller that limits the number of submissions in flight
+     * @param holdUntilFinished whether a successfully submitted job keeps occupying its slot until {@link #jobFinished(UUID)} is called for it
+     * @param singleObject      whether the submitted paths are single objects rather than batches
+     * @param retries           the number of times a failed submission is retried
+     * @param listener          called with each submission when it has completed, from the thread that made it
+     */
+    public ImportSubmitter(DefaultApi api, AimdController controller, boolean holdUntilFinished, boolean singleObject, int retries, Consumer<Submission> listener) {
+        if (retries < 0) {
+            throw new IllegalArgumentException("Number of retries must not be negative");
+        }
+        this.api = api;
+        this.singleObject = singleObject;
+        this.retries = retries;
+        this.initialRetryDelay = INITIAL_RETRY_DELAY;
+        this.inFlight = null;
+        this.controller = controller;
+        this.holdUntilFinished = holdUntilFinished;
+        this.executor = Executors.newFixedThreadPool(controller.getMaxLimit());
+        this.listener = listener;
+    }
+
+    /**
+     * Submits an import job, waiting for a free slot if the maximum number of submissions is in flight.
+     *
+     * @param path the directory of the object or batch in the import area
+     * @throws InterruptedIOException if interrupted while waiting for a free slot
+     */
+    public void submit(Path path) throws InterruptedIOException {
+        long ticket;
+        try {
+            if (controller == null) {
+                inFlight.acquire();
+                ticket = 0;
+            }
+            else {
+                ticket = controller.acquire();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to submit " + path);
+        }
+        try {
+            executor.execute(() -> post(path, ticket));
+        }
+        catch (RejectedExecutionException e) {
+            releaseSlot();
+            throw e;
+        }
+    }
+
+    private void post(Path path, long ticket) {
+        var hold = controller != null && holdUntilFinished;
+        Submission submission = null;
+        try {
+            submission = postWithRetries(path, ticket, hold);
+        }
+        finally {
+            if (submission == null || !submission.isSuccessful() || !hold) {
+                releaseSlot();
+            }
+            else if (!holdUntilFinished && heldSlots.remove(submission.getJobId()) != null) {
+                // stopHolding() was called while submitting
+                controller.release();
+            }
+        }
+        submissions.add(submission);
+        listener.accept(submission);
+    }
+
+    private void releaseSlot() {
+        if (controller == null) {
+            inFlight.release();
+        }
+        else {
+            controller.release();
+        }
+    }
+
+    private Submission postWithRetries(Path path, long ticket, boolean hold) {
+        var delay = initialRetryDelay;
+        for (int attempt = 1; ; attempt++) {
+            var start = System.nanoTime();
+            try {
+                var job = api.importsPost(new ImportCommandDto()
+                    .path(path.toAbsolutePath().toString())
+                    .singleObject(singleObject));
+                var latency = Duration.ofNanos(System.nanoTime() - start);
+                if (controller != null) {
+                    if (hold) {
+                        // The controller hears of the success when the job has finished
+                        heldSlots.put(job.getId(), new HeldSlot(ticket, latency));
+                    }
+                    else {
+                        controller.onSuccess(ticket, latency);
+                    }
+                }
+                return new Submission(path, job.getId(), null, attempt);
+            }
+            catch (ApiException e) {
+                if (controller != null && isRetryable(e)) {
+                    controller.onOverload(ticket);
+                }
+                if (attempt > retries || !isRetryable(e)) {
+                    log.warn("Could not submit import job for {}", path, e);
+                    return new Submission(path, null, e.getMessage(), attempt);
+                }
+                log.debug("Submitting import job for {} failed (attempt {}), retrying in {}: {}", path, attempt, delay, e.getMessage());
+            }
+            try {
+                Thread.sleep(delay.toMillis());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Submission(path, null, "interrupted", attempt);
+            }
+            delay = delay.multipliedBy(2);
+        }
+    }
+
+    private static boolean isRetryable(ApiException e) {
+        // 0 means that no response was received
+        return e.getCode() == 0 || e.getCode() == 429 || e.getCode() >= 500;
+    }
+
+    /**
+     * Frees the slot of a job that was submitted while holding slots until jobs finish, and reports its success to the controller.
+     *
+     * @param jobId the id of the job
+     */
+    public void jobFinished(UUID jobId) {
+        var slot = heldSlots.remove(jobId);
+        if (slot != null) {
+            controller.onSuccess(slot.getTicket(), slot.getLatency());
+            controller.release();
+        }
+    }
+
+    /**
+     * Frees the slots of all jobs that are still holding one, and no longer holds slots for jobs submitted from now on. To be called when the jobs are no longer being followed,
+     * so that the remaining submissions do not wait for slots that are never freed.
+     */
+    public void stopHolding() {
+        holdUntilFinished = false;
+        for (var jobId : List.copyOf(heldSlots.keySet())) {
+            if (heldSlots.remove(jobId) != null) {
+                controller.release();
+            }
+        }
+    }
+
+    /**
+     * The submissions that have completed so far.
+     *
+     * @return the submissions
+     */
+    public List<Submission> getSubmissions() {
+        synchronized (submissions) {
+            return List.copyOf(submissions);
+        }
+    }
+
+    /**
+     * Waits for the submissions in flight to complete.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    @Override
+    public void close() throws InterruptedIOException {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.debug("Waiting for import submissions to complete");
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for import submissions to complete");
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Waits for import jobs to finish by polling their status. The interval between polls starts short, so that quick jobs are noticed quickly, and grows by half after every poll up
+ * to a maximum, so that long-running jobs are not polled needlessly often. While only a few jobs are unfinished, each is polled with its own request; with more, the list of all
+ * jobs is requested once per poll instead, so that a single process can wait for thousands of jobs.
+ * <p>
+ * The jobs are read as {@link JobRecord}s; a job has finished when its {@code status} is {@value #SUCCESS} or {@value #FAILED}.
+ */
+@Slf4j
+public class ImportWaiter {
+    public static final String SUCCESS = "SUCCESS";
+    public static final String FAILED = "FAILED";
+    public static final Duration DEFAULT_INITIAL_INTERVAL = Duration.ofSeconds(1);
+    // Above this number of unfinished jobs, one request for all jobs is cheaper than one request per job
+    private static final int MAX_JOBS_TO_POLL_SEPARATELY = 16;
+
+    private final DefaultApi api;
+    private final Duration initialInterval;
+    private final Duration maxInterval;
+
+    @Value
+    public static class JobOutcome {
+        UUID id;
+        /**
+         * The last known status of the job, or null if it is not known.
+         */
+        String status;
+        /**
+         * The message of the job, if any.
+         */
+        String message;
+        boolean finished;
+
+        public boolean isSuccessful() {
+            return SUCCESS.equals(status);
+        }
+    }
+
+    public ImportWaiter(DefaultApi api, Duration initialInterval, Duration maxInterval) {
+        if (initialInterval.isNegative() || initialInterval.isZero() || maxInterval.compareTo(initialInterval) < 0) {
+            throw new IllegalArgumentException("Poll intervals must be positive, and the maximum interval must not be shorter than the initial one");
+        }
+        this.api = api;
+        this.initialInterval = initialInterval;
+        this.maxInterval = maxInterval;
+    }
+
+    /**
+     * Waits until all jobs have finished or the timeout has expired.
+     *
+     * @param ids      the ids of the jobs
+     * @param timeout  the maximum time to wait, or null to wait indefinitely
+     * @param listener called with the outcome of each job as soon as it has finished
+     * @return the outcomes of all jobs, in the order of the ids; jobs that had not finished when the timeout expired have {@link JobOutcome#isFinished()} false
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<JobOutcome> waitFor(Collection<UUID> ids, Duration timeout, Consumer<JobOutcome> listener) throws InterruptedException {
+        return waitFor(new ConcurrentLinkedQueue<>(ids), () -> true, timeout, listener);
+    }
+
+    /**
+     * Waits for jobs that are still being submitted, until all jobs have finished or the timeout has expired.
+     *
+     * @param ids      the ids of the jobs; ids may be added while waiting
+     * @param complete returns true once no more ids will be added
+     * @param timeout  the maximum time to wait, or null to wait indefinitely
+     * @param listener called with the outcome of each job as soon as it has finished
+     * @return the outcomes of all jobs, in the order in which they were added; jobs that had not finished when the timeout expired have {@link JobOutcome#isFinished()} false.
+     * If the timeout expired before all ids were added, the outcomes cover only the ids added so far; callers can tell this case from {@code complete} and {@code ids}.
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public List<JobOutcome> waitFor(Queue<UUID> ids, BooleanSupplier complete, Duration timeout, Consumer<JobOutcome> listener) throws InterruptedException {
+        var deadline = timeout == null ? null : Instant.now().plus(timeout);
+        var outcomes = new LinkedHashMap<UUID, JobOutcome>();
+        Set<UUID> unfinished = new LinkedHashSet<>();
+        var interval = initialInterval;
+        while (true) {
+            // Checked before taking the ids, so that no id added before completion is missed
+            var allAdded = complete.getAsBoolean();
+            UUID id;
+            while ((id = ids.poll()) != null) {
+                if (outcomes.putIfAbsent(id, new JobOutcome(id, null, null, false)) == null) {
+                    unfinished.add(id);
+                }
+            }
+            for (var outcome : unfinished.isEmpty() ? List.<JobOutcome> of() : poll(unfinished)) {
+                outcomes.put(outcome.getId(), outcome);
+                if (outcome.isFinished()) {
+                    unfinished.remove(outcome.getId());
+                    listener.accept(outcome);
+                }
+            }
+            if (unfinished.isEmpty() && allAdded) {
+                break;
+            }
+            // While there is nothing to poll, keep looking for new ids at the initial interval
+            var sleep = unfinished.isEmpty() ? initialInterval : interval;
+            if (deadline != null) {
+                var remaining = Duration.between(Instant.now(), deadline);
+                if (remaining.isNegative() || remaining.isZero()) {
+                    break;
+                }
+                sleep = sleep.compareTo(remaining) < 0 ? sleep : remaining;
+            }
+            log.debug("{} jobs unfinished; polling again in {}", unfinished.size(), sleep);
+            Thread.sleep(sleep.toMillis());
+            if (unfinished.isEmpty()) {
+                continue;
+            }
+            interval = interval.plus(interval.dividedBy(2));
+            if (interval.compareTo(maxInterval) > 0) {
+                interval = maxInterval;
+            }
+        }
+        return new ArrayList<>(outcomes.values());
+    }
+
+    private List<JobOutcome> poll(Set<UUID> unfinished) {
+        var outcomes = new ArrayList<JobOutcome>();
+        try {
+            if (unfinished.size() > MAX_JOBS_TO_POLL_SEPARATELY) {
+                for (var job : api.importsGet()) {
+                    var outcome = toOutcome(job);
+                    if (outcome != null && unfinished.contains(outcome.getId())) {
+                        outcomes.add(outcome);
+                    }
+                }
+                return outcomes;
+            }
+            for (var id : unfinished) {
+                try {
+                    var outcome = toOutcome(api.importsIdGet(id));
+                    if (outcome != null) {
+                        outcomes.add(outcome);
+                    }
+                }
+                catch (ApiException e) {
+                    if (e.getCode() != 404) {
+                        throw e;
+                    }
+                    outcomes.add(new JobOutcome(id, null, "job not found", true));
+                }
+            }
+        }
+        catch (ApiException e) {
+            // The service may be restarting; the next poll will tell
+            log.warn("Could not poll import jobs: {}", e.getMessage());
+        }
+        return outcomes;
+    }
+
+    private JobOutcome toOutcome(ImportJobStatusDto job) {
+        var record = JobRecord.of(job);
+        if (record.getId() == null) {
+            return null;
+        }
+        return new JobOutcome(UUID.fromString(record.getId()), record.getStatus(), record.getMessage(), record.isFinished());
+    }
+}
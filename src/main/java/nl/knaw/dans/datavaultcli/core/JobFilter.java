@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Selects import jobs by status, creation time and path. Criteria that are not set match every job. A time range can only be applied to jobs of which the creation time is
+ * known; for other jobs {@link #test(JobRecord)} fails, rather than silently selecting or skipping them.
+ */
+@Value
+@Builder
+public class JobFilter implements Predicate<JobRecord> {
+    /**
+     * The statuses to select, or empty to select all.
+     */
+    @Builder.Default
+    Set<String> states = Set.of();
+    /**
+     * Select only jobs created at or after this time.
+     */
+    Instant since;
+    /**
+     * Select only jobs created before this time.
+     */
+    Instant until;
+    /**
+     * Select only jobs of which the path starts with this prefix.
+     */
+    String pathPrefix;
+
+    /**
+     * @return whether the filter selects on creation time, so that it needs the creation time of every job
+     */
+    public boolean hasTimeRange() {
+        return since != null || until != null;
+    }
+
+    /**
+     * @throws IllegalStateException if the filter has a time range and the creation time of the job is not known
+     */
+    @Override
+    public boolean test(JobRecord job) {
+        if (!states.isEmpty() && (job.getStatus() == null || !states.contains(job.getStatus()))) {
+            return false;
+        }
+        if (hasTimeRange()) {
+            if (job.getCreated() == null) {
+                throw new IllegalStateException("The service does not report the creation time of job " + job.getId());
+            }
+            if (since != null && job.getCreated().isBefore(since)) {
+                return false;
+            }
+            if (until != null && !job.getCreated().isBefore(until)) {
+                return false;
+            }
+        }
+        return pathPrefix == null || job.getPath() != null && job.getPath().startsWith(pathPrefix);
+    }
+}
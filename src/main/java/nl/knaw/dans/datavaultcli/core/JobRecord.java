@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+
+/**
+ * The fields of an import job that the CLI uses, read from the job as returned by the service. The timestamps are {@code null} if the service has not set them. The job itself
+ * is kept as well, so that output that shows all of it can render it when needed, without a copy of every job being made up front.
+ */
+@Value
+public class JobRecord {
+    String id;
+    String path;
+    String status;
+    String message;
+    Instant created;
+    Instant finished;
+    /**
+     * The complete job, as returned by the service.
+     */
+    ImportJobStatusDto jobStatusDto;
+
+    public static JobRecord of(ImportJobStatusDto job) {
+        return new JobRecord(
+            job.getId() == null ? null : job.getId().toString(),
+            job.getPath(),
+            job.getStatus() == null ? null : job.getStatus().toString(),
+            job.getMessage(),
+            toInstant(job.getCreationTime()),
+            toInstant(job.getFinishedTime()),
+            job);
+    }
+
+    public boolean isFinished() {
+        return ImportWaiter.SUCCESS.equals(status) || ImportWaiter.FAILED.equals(status);
+    }
+
+    private static Instant toInstant(OffsetDateTime time) {
+        return time == null ? null : time.toInstant();
+    }
+}
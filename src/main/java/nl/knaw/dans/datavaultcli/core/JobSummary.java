@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregates over a stream of import jobs: the number of jobs per status and the durations of the finished jobs of which the service reports both the creation and the
+ * finishing time.
+ */
+public class JobSummary {
+    private final Map<String, Long> counts = new TreeMap<>();
+    @Getter
+    private long jobs;
+    /**
+     * The number of jobs with a known duration.
+     */
+    @Getter
+    private long timedJobs;
+    private Duration minDuration;
+    private Duration maxDuration;
+    private Duration totalDuration = Duration.ZERO;
+
+    public void add(JobRecord job) {
+        jobs++;
+        counts.merge(job.getStatus() == null ? "UNKNOWN" : job.getStatus(), 1L, Long::sum);
+        if (job.isFinished() && job.getCreated() != null && job.getFinished() != null) {
+            var duration = Duration.between(job.getCreated(), job.getFinished());
+            timedJobs++;
+            totalDuration = totalDuration.plus(duration);
+            if (minDuration == null || duration.compareTo(minDuration) < 0) {
+                minDuration = duration;
+            }
+            if (maxDuration == null || duration.compareTo(maxDuration) > 0) {
+                maxDuration = duration;
+            }
+        }
+    }
+
+    /**
+     * @return the number of jobs per status, ordered by status
+     */
+    public Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(counts);
+    }
+
+    /**
+     * @return the shortest duration, or null if no duration is known
+     */
+    public Duration getMinDuration() {
+        return minDuration;
+    }
+
+    /**
+     * @return the longest duration, or null if no duration is known
+     */
+    public Duration getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @return the average duration, or null if no duration is known
+     */
+    public Duration getAverageDuration() {
+        return timedJobs == 0 ? null : totalDuration.dividedBy(timedJobs);
+    }
+}
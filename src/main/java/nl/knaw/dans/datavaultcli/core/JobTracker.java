@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Follows the list of import jobs across successive polls. It reports which of the jobs of interest - all jobs that have not succeeded - were added, changed or removed since
+ * the previous poll, how long each of them has been in its current status and how many jobs finished per minute recently.
+ * <p>
+ * The elapsed time of a job is measured from the first poll that saw the job in its current status, as the service does not report when the status of a job changed. For a job
+ * that was already in its status at the first poll, it is the time since that poll.
+ */
+public class JobTracker {
+    private final Duration throughputWindow;
+    private final Map<String, TrackedJob> jobs = new HashMap<>();
+    private final Deque<Instant> finishTimes = new ArrayDeque<>();
+    private Instant started;
+
+    public enum ChangeType {
+        ADDED,
+        CHANGED,
+        REMOVED
+    }
+
+    @Value
+    public static class Change {
+        ChangeType type;
+        /**
+         * The job as last seen; for a removed job the job as it was before it was removed.
+         */
+        JobRecord job;
+    }
+
+    @Value
+    public static class TrackedJob {
+        JobRecord job;
+        /**
+         * The time of the first poll that saw the job in its current status.
+         */
+        Instant seen;
+
+        /**
+         * @return the time the job has been in its current status
+         */
+        public Duration getElapsed(Instant now) {
+            return Duration.between(seen, now);
+        }
+
+        boolean isVisible() {
+            return !ImportWaiter.SUCCESS.equals(job.getStatus());
+        }
+    }
+
+    public JobTracker(Duration throughputWindow) {
+        this.throughputWindow = throughputWindow;
+    }
+
+    /**
+     * Processes the result of a poll.
+     *
+     * @param snapshot all jobs currently known to the service
+     * @param now      the time of the poll
+     * @return the changes to the jobs of interest since the previous poll; on the first poll, all jobs of interest are added
+     */
+    public List<Change> update(Collection<JobRecord> snapshot, Instant now) {
+        var firstPoll = started == null;
+        if (firstPoll) {
+            started = now;
+        }
+        var changes = new ArrayList<Change>();
+        var previous = new HashMap<>(jobs);
+        jobs.clear();
+        for (var job : snapshot) {
+            if (job.getId() == null) {
+                continue;
+            }
+            var before = previous.remove(job.getId());
+            var statusChanged = before == null || !Objects.equals(before.getJob().getStatus(), job.getStatus());
+            var tracked = new TrackedJob(job, statusChanged ? now : before.getSeen());
+            jobs.put(job.getId(), tracked);
+            if (!firstPoll && job.isFinished() && (before == null || !before.getJob().isFinished())) {
+                finishTimes.add(now);
+            }
+            if (before != null && before.isVisible()) {
+                if (!tracked.isVisible()) {
+                    changes.add(new Change(ChangeType.REMOVED, before.getJob()));
+                }
+                else if (statusChanged || !Objects.equals(before.getJob().getMessage(), job.getMessage())) {
+                    changes.add(new Change(ChangeType.CHANGED, job));
+                }
+            }
+            else if (tracked.isVisible()) {
+                changes.add(new Change(ChangeType.ADDED, job));
+            }
+        }
+        for (var gone : previous.values()) {
+            if (gone.isVisible()) {
+                changes.add(new Change(ChangeType.REMOVED, gone.getJob()));
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * @return the jobs of interest, in no particular order
+     */
+    public List<TrackedJob> getVisibleJobs() {
+        return jobs.values().stream().filter(TrackedJob::isVisible).toList();
+    }
+
+    /**
+     * @return the number of jobs per status, ordered by status
+     */
+    public Map<String, Long> getCounts() {
+        var counts = new TreeMap<String, Long>();
+        for (var tracked : jobs.values()) {
+            var status = tracked.getJob().getStatus();
+            counts.merge(status == null ? "UNKNOWN" : status, 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the number of jobs per minute that finished during the throughput window before {@code now}, or since the first poll if that was more recent.
+     *
+     * @param now the current time
+     * @return the number of jobs per minute
+     */
+    public double getJobsPerMinute(Instant now) {
+        if (started == null) {
+            return 0;
+        }
+        var windowStart = now.minus(throughputWindow);
+        while (!finishTimes.isEmpty() && finishTimes.peekFirst().isBefore(windowStart)) {
+            finishTimes.removeFirst();
+        }
+        var span = Duration.between(started.isAfter(windowStart) ? started : windowStart, now);
+        if (span.toSeconds() < 1) {
+            return 0;
+        }
+        return finishTimes.size() * 60.0 / span.toMillis() * 1000;
+    }
+}
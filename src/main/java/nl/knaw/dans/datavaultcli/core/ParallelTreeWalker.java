@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Walks a directory tree on a work-stealing {@link ForkJoinPool}. Every entry is visited in its own task, which is forked by the task of its parent directory. Idle threads steal
+ * pending tasks from busy ones, so that deep as well as wide trees keep all threads occupied.
+ * <p>
+ * The entries of a directory are read one by one from a {@link java.nio.file.DirectoryStream}. A directory task has at most a fixed number of forked entry tasks pending; when the
+ * limit is reached, it waits for the oldest one to complete before reading the next entry. Only a bounded number of directory tasks is in progress at any time (roughly one per
+ * level of the tree for each thread), so memory use does not depend on the number of entries in a directory.
+ * <p>
+ * Symbolic links below the root are not followed. They are passed to {@link Visitor#visitFile(Path, PosixFileAttributes)} with the attributes of the link itself, so that a link
+ * to a directory cannot make the walk leave the tree or run into a cycle.
+ */
+@Slf4j
+public class ParallelTreeWalker {
+    public static final int DEFAULT_MAX_PENDING_ENTRIES = 1024;
+
+    private final int threads;
+    private final int maxPendingEntries;
+
+    public ParallelTreeWalker(int threads) {
+        this(threads, DEFAULT_MAX_PENDING_ENTRIES);
+    }
+
+    /**
+     * @param threads           the number of threads to walk the tree with
+     * @param maxPendingEntries the maximum number of entries of a single directory that are waiting to be visited; only tests need another limit than the default
+     */
+    ParallelTreeWalker(int threads, int maxPendingEntries) {
+        if (threads < 1 || maxPendingEntries < 1) {
+            throw new IllegalArgumentException("Number of threads and maximum number of pending entries must be at least 1");
+        }
+        this.threads = threads;
+        this.maxPendingEntries = maxPendingEntries;
+    }
+
+    /**
+     * Callbacks for the entries of the tree. The callbacks are called concurrently from multiple threads, so implementations must be thread-safe. For a given directory
+     * {@link #preVisitDirectory(Path, PosixFileAttributes)} is called before, and {@link #postVisitDirectory(Path, PosixFileAttributes)} after all its descendants. If
+     * {@link #preVisitDirectory(Path, PosixFileAttributes)} returns {@link FileVisitResult#SKIP_SUBTREE}, the descendants of the directory are not visited and neither is the
+     * directory itself after them.
+     */
+    public interface Visitor {
+        FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException;
+
+        void visitFile(Path file, PosixFileAttributes attrs) throws IOException;
+
+        default void postVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+        }
+    }
+
+    public void walk(Path root, Visitor visitor) throws IOException {
+        var rootAttrs = Files.readAttributes(root, PosixFileAttributes.class);
+        if (!rootAttrs.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+        log.debug("Walking {} with {} threads", root, threads);
+        var pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new EntryTask(root, rootAttrs, visitor));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    private class EntryTask extends RecursiveAction {
+        private final Path path;
+        private final Visitor visitor;
+        private PosixFileAttributes attrs;
+
+        EntryTask(Path path, PosixFileAttributes attrs, Visitor visitor) {
+            this.path = path;
+            this.attrs = attrs;
+            this.visitor = visitor;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                // Read here rather than in the parent, so that the entries of a large directory are also inspected in parallel
+                if (attrs == null) {
+                    attrs = Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                }
+                if (attrs.isDirectory()) {
+                    walkDirectory();
+                }
+                else {
+                    visitor.visitFile(path, attrs);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void walkDirectory() throws IOException {
+            if (visitor.preVisitDirectory(path, attrs) == FileVisitResult.SKIP_SUBTREE) {
+                return;
+            }
+            var pending = new ArrayDeque<ForkJoinTask<?>>();
+            try (var entries = Files.newDirectoryStream(path)) {
+                for (var entry : entries) {
+                    if (pending.size() >= maxPendingEntries) {
+                        pending.removeFirst().join();
+                    }
+                    pending.addLast(new EntryTask(entry, null, visitor).fork());
+                }
+                while (!pending.isEmpty()) {
+                    pending.removeFirst().join();
+                }
+            }
+            visitor.postVisitDirectory(path, attrs);
+        }
+    }
+}
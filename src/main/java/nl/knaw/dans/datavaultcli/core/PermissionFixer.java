@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sets the permissions of all files and directories in a tree to the given ones. The current permissions are taken from the attributes read during the parallel walk, so an
+ * entry that already has the right permissions costs no extra system call. Symbolic links are left alone, as changing their permissions would change those of the file they point to.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PermissionFixer {
+    private final int threads;
+    @NonNull
+    private final Set<PosixFilePermission> filePermissions;
+    @NonNull
+    private final Set<PosixFilePermission> directoryPermissions;
+
+    @Value
+    public static class Result {
+        long entries;
+        long changed;
+    }
+
+    public Result fix(Path root) throws IOException {
+        var entries = new LongAdder();
+        var changed = new LongAdder();
+        new ParallelTreeWalker(threads).walk(root, new ParallelTreeWalker.Visitor() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+                setPermissions(dir, attrs, directoryPermissions);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) throws IOException {
+                if (attrs.isSymbolicLink()) {
+                    return;
+                }
+                setPermissions(file, attrs, filePermissions);
+            }
+
+            private void setPermissions(Path path, PosixFileAttributes attrs, Set<PosixFilePermission> permissions) throws IOException {
+                entries.increment();
+                if (!attrs.permissions().equals(permissions)) {
+                    log.debug("Changing permissions of {} from {} to {}", path, attrs.permissions(), permissions);
+                    Files.setPosixFilePermissions(path, permissions);
+                    changed.increment();
+                }
+            }
+        });
+        return new Result(entries.sum(), changed.sum());
+    }
+}
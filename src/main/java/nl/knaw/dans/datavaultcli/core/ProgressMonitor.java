@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Periodically reports the progress of a {@link BatchCopier}. The totals are determined by a {@link BatchScan} of the source. If no scan is available yet, it runs concurrently with
+ * the copy, so that copying does not have to wait for it. Until the scan has finished, the totals and the estimated time remaining are unknown.
+ * <p>
+ * Copied bytes are counted as they are transferred, not when a file has been completed, so that the progress also advances while a single large file is being copied. When a copy
+ * is resumed, the scan must leave out the entries that were completed before, because these are not counted as done.
+ */
+@Slf4j
+public class ProgressMonitor implements Closeable {
+    // Static, so that it can be used in the constructor delegation
+    private static final ExecutorService SCAN_EXECUTOR = Executors.newCachedThreadPool(daemonThreadFactory("copy-progress-scan"));
+
+    private final CopyStatistics statistics;
+    private final Consumer<Progress> listener;
+    private final CompletableFuture<BatchScan> scan;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory("copy-progress"));
+    private final Clock clock;
+    private final Instant start;
+    private Instant lastReport;
+    private long lastBytesDone;
+
+    /**
+     * A snapshot of the progress. Totals and the estimated time remaining are null while they are not yet known.
+     */
+    @Value
+    @Builder
+    public static class Progress {
+        Instant timestamp;
+        long filesDone;
+        Long filesTotal;
+        long bytesDone;
+        Long bytesTotal;
+        long currentBytesPerSecond;
+        long averageBytesPerSecond;
+        Long etaSeconds;
+    }
+
+    public ProgressMonitor(Path source, Set<String> completed, int threads, CopyStatistics statistics, Duration interval, Consumer<Progress> listener) {
+        this(CompletableFuture.supplyAsync(() -> {
+            try {
+                return BatchScan.scan(source, threads, completed);
+            }
+            catch (Exception e) {
+                log.warn("Could not scan {}; progress will be reported without totals", source, e);
+                return null;
+            }
+        }, SCAN_EXECUTOR), statistics, interval, listener, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a monitor with the totals of an earlier scan, or, if the scan is null, without totals.
+     */
+    public ProgressMonitor(BatchScan scan, CopyStatistics statistics, Duration interval, Consumer<Progress> listener) {
+        this(scan, statistics, interval, listener, Clock.systemUTC());
+    }
+
+    /**
+     * @param clock the clock to measure the rates with; only tests need another clock than the system clock
+     */
+    ProgressMonitor(BatchScan scan, CopyStatistics statistics, Duration interval, Consumer<Progress> listener, Clock clock) {
+        this(CompletableFuture.completedFuture(scan), statistics, interval, listener, clock);
+    }
+
+    private ProgressMonitor(CompletableFuture<BatchScan> scan, CopyStatistics statistics, Duration interval, Consumer<Progress> listener, Clock clock) {
+        this.scan = scan;
+        this.statistics = statistics;
+        this.listener = listener;
+        this.clock = clock;
+        this.start = clock.instant();
+        this.lastReport = start;
+        scheduler.scheduleAtFixedRate(this::report, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String name) {
+        return r -> {
+            var thread = new Thread(r, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private synchronized void report() {
+        try {
+            listener.accept(getProgress());
+        }
+        catch (RuntimeException e) {
+            log.warn("Could not report progress", e);
+        }
+    }
+
+    public synchronized Progress getProgress() {
+        var now = clock.instant();
+        var filesDone = statistics.getFilesCopied() + statistics.getFilesUnchanged() + statistics.getFilesDeduplicated();
+        var bytesDone = statistics.getBytesTransferred() + statistics.getBytesUnchanged() + statistics.getBytesDeduplicated();
+        var sinceLastReport = Math.max(1, Duration.between(lastReport, now).toMillis());
+        var sinceStart = Math.max(1, Duration.between(start, now).toMillis());
+        var currentBytesPerSecond = (bytesDone - lastBytesDone) * 1000 / sinceLastReport;
+        var averageBytesPerSecond = bytesDone * 1000 / sinceStart;
+        lastReport = now;
+        lastBytesDone = bytesDone;
+
+        var totals = scan.getNow(null);
+        Long etaSeconds = null;
+        if (totals != null && averageBytesPerSecond > 0) {
+            etaSeconds = Math.max(0, totals.getBytes() - bytesDone) / averageBytesPerSecond;
+        }
+        return Progress.builder()
+            .timestamp(now)
+            .filesDone(filesDone)
+            .filesTotal(totals == null ? null : totals.getFiles())
+            .bytesDone(bytesDone)
+            .bytesTotal(totals == null ? null : totals.getBytes())
+            .currentBytesPerSecond(currentBytesPerSecond)
+            .averageBytesPerSecond(averageBytesPerSecond)
+            .etaSeconds(etaSeconds)
+            .build();
+    }
+
+    /**
+     * Stops reporting, after reporting the final progress.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        // A scan that is still running is abandoned; it runs on daemon threads only
+        report();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import io.dropwizard.util.DataSize;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of bytes and files per second that are copied. A limit of 0 means unlimited. The limits can be changed while copying, either directly or through a control
+ * file, which is checked for changes every second. The control file is a properties file with the keys {@value #MAX_BYTES_PER_SECOND} (a data size such as {@code 50MiB}) and
+ * {@value #MAX_FILES_PER_SECOND}; a missing key means unlimited.
+ */
+@Slf4j
+public class Throttle implements Closeable {
+    public static final String MAX_BYTES_PER_SECOND = "max-bytes-per-second";
+    public static final String MAX_FILES_PER_SECOND = "max-files-per-second";
+
+    private final Rate bytes;
+    private final Rate files;
+    private ScheduledExecutorService controlFileWatcher;
+
+    public Throttle(long maxBytesPerSecond, long maxFilesPerSecond) {
+        this.bytes = new Rate(maxBytesPerSecond);
+        this.files = new Rate(maxFilesPerSecond);
+    }
+
+    public static Throttle unlimited() {
+        return new Throttle(0, 0);
+    }
+
+    public void setMaxBytesPerSecond(long maxBytesPerSecond) {
+        bytes.setPerSecond(maxBytesPerSecond);
+    }
+
+    public void setMaxFilesPerSecond(long maxFilesPerSecond) {
+        files.setPerSecond(maxFilesPerSecond);
+    }
+
+    public boolean isBytesLimited() {
+        return bytes.perSecond > 0;
+    }
+
+    /**
+     * Blocks until the given number of bytes may be copied.
+     *
+     * @param count the number of bytes
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquireBytes(long count) throws InterruptedIOException {
+        bytes.acquire(count);
+    }
+
+    /**
+     * Blocks until another file may be copied.
+     *
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    public void acquireFile() throws InterruptedIOException {
+        files.acquire(1);
+    }
+
+    /**
+     * Reads the limits from the control file once.
+     *
+     * @param controlFile the control file
+     * @throws IOException              if the control file cannot be read
+     * @throws IllegalArgumentException if a limit in the control file is not valid
+     */
+    public void loadControlFile(Path controlFile) throws IOException {
+        readControlFile(controlFile);
+    }
+
+    /**
+     * Reads the limits from the control file now, and again every time it is modified.
+     *
+     * @param controlFile the control file
+     * @throws IOException if the control file cannot be read
+     */
+    public synchronized void watchControlFile(Path controlFile) throws IOException {
+        if (controlFileWatcher != null) {
+            throw new IllegalStateException("Already watching a control file");
+        }
+        var lastModified = new FileTime[] { readControlFile(controlFile) };
+        controlFileWatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            var thread = new Thread(r, "throttle-control-file-watcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        controlFileWatcher.scheduleWithFixedDelay(() -> {
+            try {
+                if (!Files.getLastModifiedTime(controlFile).equals(lastModified[0])) {
+                    lastModified[0] = readControlFile(controlFile);
+                }
+            }
+            catch (IOException | IllegalArgumentException e) {
+                log.warn("Could not read throttle control file {}: {}", controlFile, e.getMessage());
+            }
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    private FileTime readControlFile(Path controlFile) throws IOException {
+        var lastModified = Files.getLastModifiedTime(controlFile);
+        var properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(controlFile)) {
+            properties.load(reader);
+        }
+        var maxBytesPerSecond = properties.getProperty(MAX_BYTES_PER_SECOND);
+        var maxFilesPerSecond = properties.getProperty(MAX_FILES_PER_SECOND);
+        setMaxBytesPerSecond(maxBytesPerSecond == null ? 0 : DataSize.parse(maxBytesPerSecond.trim()).toBytes());
+        setMaxFilesPerSecond(maxFilesPerSecond == null ? 0 : Long.parseLong(maxFilesPerSecond.trim()));
+        log.info("Throttle set to {} bytes and {} files per second (0 means unlimited)", bytes.perSecond, files.perSecond);
+        return lastModified;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (controlFileWatcher != null) {
+            controlFileWatcher.shutdownNow();
+        }
+    }
+
+    /**
+     * Hands out permits at a steady rate. Every caller reserves the time slot after the one reserved by the previous caller and waits until its slot has started.
+     */
+    private static class Rate {
+        private volatile long perSecond;
+        private long nextFreeNanos = System.nanoTime();
+
+        Rate(long perSecond) {
+            setPerSecond(perSecond);
+        }
+
+        void setPerSecond(long perSecond) {
+            if (perSecond < 0) {
+                throw new IllegalArgumentException("Rate must not be negative: " + perSecond);
+            }
+            this.perSecond = perSecond;
+        }
+
+        void acquire(long permits) throws InterruptedIOException {
+            var waitNanos = reserve(permits);
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while throttled");
+                }
+            }
+        }
+
+        private synchronized long reserve(long permits) {
+            var rate = perSecond;
+            var now = System.nanoTime();
+            if (rate == 0) {
+                nextFreeNanos = now;
+                return 0;
+            }
+            var start = Math.max(nextFreeNanos, now);
+            nextFreeNanos = start + (long) (permits * 1_000_000_000.0 / rate);
+            return start - now;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+/**
+ * The way in which the contents of a file are transferred from the source to the target.
+ */
+public enum TransferMode {
+    /**
+     * Use {@link #CHANNEL} if source and target are on the same file system, otherwise {@link #STREAM}.
+     */
+    AUTO,
+    /**
+     * Copy through the JVM.
+     */
+    STREAM,
+    /**
+     * Copy with {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the kernel copy the data without moving it through
+     * user space.
+     */
+    CHANNEL,
+    /**
+     * Create a copy-on-write clone of the file (XFS, Btrfs). Falls back to {@link #CHANNEL} if the file system does not support this.
+     */
+    REFLINK,
+    /**
+     * Create a hard link to the source file. Source and target must be on the same file system. Note that source and target will then share their permissions.
+     */
+    HARDLINK,
+    /**
+     * Rename the source file to the target file. Source and target must be on the same file system. The source directories are removed once they are empty.
+     */
+    MOVE
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deletes directory trees with a {@link ParallelTreeWalker}: files are deleted by all threads at the same time, and each directory as soon as its contents are gone. Symbolic
+ * links are deleted themselves, never what they point to.
+ * <p>
+ * The reclaimed space counts only files of which the deleted link was the last one; files that are also linked from elsewhere, for instance by deduplication, keep their space.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class TreeDeleter {
+    private final int threads;
+
+    @Value
+    public static class Result {
+        long files;
+        long directories;
+        long bytesReclaimed;
+    }
+
+    public Result delete(Path root) throws IOException {
+        var files = new LongAdder();
+        var directories = new LongAdder();
+        var bytesReclaimed = new LongAdder();
+        new ParallelTreeWalker(threads).walk(root, new ParallelTreeWalker.Visitor() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) throws IOException {
+                // The walker does not follow links, so a symbolic link, dangling or not, is visited as a file and deleted itself
+                var lastLink = attrs.isRegularFile() && getLinkCount(file) == 1;
+                Files.delete(file);
+                files.increment();
+                if (lastLink) {
+                    bytesReclaimed.add(attrs.size());
+                }
+            }
+
+            @Override
+            public void postVisitDirectory(Path dir, PosixFileAttributes attrs) throws IOException {
+                Files.delete(dir);
+                directories.increment();
+            }
+        });
+        log.debug("Deleted {} files and {} directories in {}", files.sum(), directories.sum(), root);
+        return new Result(files.sum(), directories.sum(), bytesReclaimed.sum());
+    }
+
+    private static int getLinkCount(Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+        }
+        catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return 1;
+        }
+    }
+}
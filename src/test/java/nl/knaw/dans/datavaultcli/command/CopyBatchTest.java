@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.config.ImportAreaConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+class CopyBatchTest {
+    private final Context context = Mockito.mock(Context.class);
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+    private Path importArea;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        source = Files.createDirectories(tempDir.resolve("source/batch"));
+        Files.createDirectories(source.resolve("object/v1"));
+        Files.writeString(source.resolve("object/v1/file.txt"), "content");
+        importArea = Files.createDirectories(tempDir.resolve("import-area"));
+        var importAreaConfig = new ImportAreaConfig();
+        importAreaConfig.setPath(importArea);
+        importAreaConfig.setFileMode("0644");
+        importAreaConfig.setDirectoryMode("0755");
+        when(context.getImportAreaConfig()).thenReturn(importAreaConfig);
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(standardErr);
+    }
+
+    private int call(String... args) throws Exception {
+        var command = new CopyBatch(context);
+        new CommandLine(command).parseArgs(args);
+        return command.call();
+    }
+
+    @Test
+    void call_with_dry_run_should_report_the_plan_without_copying() throws Exception {
+        Files.writeString(source.resolve("object/v1/large.bin"), "x".repeat(2000));
+        var target = importArea.resolve("batch");
+
+        assertThat(call("--dry-run", source.toString(), target.toString())).isEqualTo(0);
+
+        assertThat(errorStreamCaptor.toString())
+            .contains("Source: 2 files and 3 directories, 2.0 KiB")
+            .contains("Space: 2.0 KiB required")
+            .contains("Inodes: 5 required");
+        assertThat(importArea).isEmptyDirectory();
+    }
+
+    @Test
+    void call_with_dry_run_should_not_count_the_space_of_linked_files() throws Exception {
+        var target = importArea.resolve("batch");
+
+        assertThat(call("--dry-run", "--transfer", "hardlink", source.toString(), target.toString())).isEqualTo(0);
+
+        assertThat(errorStreamCaptor.toString())
+            .contains("Source: 1 files and 3 directories, 7 B")
+            .contains("Space: 0 B required")
+            .contains("Inodes: 3 required");
+        assertThat(importArea).isEmptyDirectory();
+    }
+
+    @Test
+    void call_should_report_a_missing_throttle_file_without_copying() throws Exception {
+        var target = importArea.resolve("batch");
+
+        assertThat(call("--throttle-file", tempDir.resolve("missing.properties").toString(), source.toString(), target.toString())).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("Cannot read throttle file: " + tempDir.resolve("missing.properties"));
+        assertThat(target).doesNotExist();
+    }
+
+    @Test
+    void call_should_report_an_invalid_throttle_file_without_copying() throws Exception {
+        var target = importArea.resolve("batch");
+        var throttleFile = Files.writeString(tempDir.resolve("throttle.properties"), "max-bytes-per-second = fast\n");
+
+        assertThat(call("--throttle-file", throttleFile.toString(), source.toString(), target.toString())).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("Invalid throttle limit");
+        assertThat(target).doesNotExist();
+    }
+}
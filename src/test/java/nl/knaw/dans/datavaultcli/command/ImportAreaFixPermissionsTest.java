@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.config.ImportAreaConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+class ImportAreaFixPermissionsTest {
+    private final Context context = Mockito.mock(Context.class);
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+
+    @TempDir
+    Path tempDir;
+
+    private Path importArea;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        importArea = Files.createDirectories(tempDir.resolve("import-area"));
+        Files.setPosixFilePermissions(importArea, PosixFilePermissions.fromString("rwxr-xr-x"));
+        var importAreaConfig = new ImportAreaConfig();
+        importAreaConfig.setPath(importArea);
+        importAreaConfig.setFileMode("0644");
+        importAreaConfig.setDirectoryMode("0755");
+        when(context.getImportAreaConfig()).thenReturn(importAreaConfig);
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(standardErr);
+    }
+
+    private int call(String... args) throws Exception {
+        var command = new ImportAreaFixPermissions(context);
+        new CommandLine(command).parseArgs(args);
+        return command.call();
+    }
+
+    @Test
+    void call_should_change_only_the_entries_with_other_permissions() throws Exception {
+        var batch = Files.createDirectories(importArea.resolve("batch"));
+        Files.setPosixFilePermissions(batch, PosixFilePermissions.fromString("rwxr-xr-x"));
+        var unchanged = Files.writeString(batch.resolve("unchanged.txt"), "content");
+        Files.setPosixFilePermissions(unchanged, PosixFilePermissions.fromString("rw-r--r--"));
+        var changed = Files.writeString(batch.resolve("changed.txt"), "content");
+        Files.setPosixFilePermissions(changed, PosixFilePermissions.fromString("rw-------"));
+        Files.createSymbolicLink(batch.resolve("link.txt"), changed);
+
+        assertThat(call()).isEqualTo(0);
+
+        assertThat(errorStreamCaptor.toString()).contains("Checked 4 entries in " + importArea + "; changed the permissions of 1");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(changed))).isEqualTo("rw-r--r--");
+    }
+
+    @Test
+    void call_should_refuse_a_path_outside_the_import_area() throws Exception {
+        var outside = Files.createDirectories(tempDir.resolve("outside"));
+
+        assertThat(call(outside.toString())).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("Path must be inside the import area.");
+    }
+}
@@ -18,6 +18,8 @@ package nl.knaw.dans.datavaultcli.command;
 import io.dropwizard.client.JerseyClientConfiguration;
 import nl.knaw.dans.datavaultcli.Context;
 import nl.knaw.dans.datavaultcli.DataVaultCli;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto.StatusEnum;
 import nl.knaw.dans.datavaultcli.client.ApiException;
 import nl.knaw.dans.datavaultcli.client.DefaultApi;
 import nl.knaw.dans.datavaultcli.config.DataVaultConfiguration;
@@ -27,13 +29,21 @@ import nl.knaw.dans.datavaultcli.config.StorageRootConfig;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 import picocli.CommandLine;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.doThrow;
@@ -48,6 +58,9 @@ class ImportCleanupTest {
     private final ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
     private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
 
+    @TempDir
+    Path tempDir;
+
     @BeforeEach
     void setUp() {
         when(context.getApi()).thenReturn(defaultApi);
@@ -55,6 +68,38 @@ class ImportCleanupTest {
         System.setErr(new PrintStream(errorStreamCaptor));
     }
 
+    private Path stagedBatch(String name) throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve(name).resolve("object/v1"));
+        Files.writeString(batch.resolve("file.txt"), "content");
+        Files.createSymbolicLink(batch.resolve("dangling"), tempDir.resolve("does-not-exist"));
+        for (var dir = batch; !dir.equals(tempDir); dir = dir.getParent()) {
+            Files.setLastModifiedTime(dir, FileTime.from(OffsetDateTime.now().minus(Duration.ofDays(1)).toInstant()));
+        }
+        // So that the import finishes after the batch was staged
+        Thread.sleep(10);
+        return tempDir.resolve(name);
+    }
+
+    private ImportJobStatusDto job(Path batch, StatusEnum status) {
+        var finished = OffsetDateTime.now();
+        return new ImportJobStatusDto()
+            .id(UUID.randomUUID())
+            .path(batch.toString())
+            .status(status)
+            .creationTime(finished.minus(Duration.ofMinutes(10)))
+            .finishedTime(finished);
+    }
+
+    private ImportCleanup localCleanupCommand(String... args) throws Exception {
+        var importAreaConfig = new ImportAreaConfig();
+        importAreaConfig.setPath(tempDir);
+        when(context.getImportAreaConfig()).thenReturn(importAreaConfig);
+        when(defaultApi.importsGet()).thenReturn(List.of(job(stagedBatch("imported"), StatusEnum.SUCCESS), job(stagedBatch("failed"), StatusEnum.FAILED)));
+        var command = new ImportCleanup(context);
+        new CommandLine(command).parseArgs(args);
+        return command;
+    }
+
     @AfterEach
     void tearDown() {
         System.setOut(standardOut);
@@ -83,6 +128,29 @@ class ImportCleanupTest {
         assertThat(errorStreamCaptor.toString()).contains("Error: API error occurred");
     }
 
+    @Test
+    void call_with_local_should_delete_only_directories_that_were_imported_successfully() throws Exception {
+        var result = localCleanupCommand("--local").call();
+
+        assertThat(result).isEqualTo(0);
+        assertThat(tempDir.resolve("imported")).doesNotExist();
+        assertThat(tempDir.resolve("failed/object/v1/file.txt")).exists();
+        assertThat(errorStreamCaptor.toString()).contains("Deleted 1 directories");
+    }
+
+    @Test
+    void call_with_local_and_dry_run_should_delete_nothing() throws Exception {
+        var result = localCleanupCommand("--local", "-n").call();
+
+        assertThat(result).isEqualTo(0);
+        assertThat(tempDir.resolve("imported/object/v1/file.txt")).exists();
+        assertThat(tempDir.resolve("failed/object/v1/file.txt")).exists();
+        assertThat(errorStreamCaptor.toString())
+            .contains("Would delete " + tempDir.resolve("imported"))
+            .doesNotContain("Would delete " + tempDir.resolve("failed"))
+            .doesNotContain("Deleted");
+    }
+
     @Test
     void cli_execution_should_parse_import_cleanup_subcommand() {
         var cli = new DataVaultCli();
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.api.ImportCommandDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import nl.knaw.dans.datavaultcli.config.ImportAreaConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportStartTest {
+    private final Context context = Mockito.mock(Context.class);
+    private final DefaultApi defaultApi = Mockito.mock(DefaultApi.class);
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+    // Submissions from a list are made by multiple threads
+    private final Queue<String> submittedPaths = new ConcurrentLinkedQueue<>();
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(context.getApi()).thenReturn(defaultApi);
+        when(context.getObjectMapper()).thenReturn(new ObjectMapper());
+        when(defaultApi.importsPost(any(ImportCommandDto.class))).thenAnswer(invocation -> {
+            ImportCommandDto command = invocation.getArgument(0);
+            submittedPaths.add(command.getPath());
+            return new ImportJobStatusDto().id(UUID.randomUUID());
+        });
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(standardErr);
+    }
+
+    private int call(String... args) throws Exception {
+        var command = new ImportStart(context);
+        new CommandLine(command).parseArgs(args);
+        return command.call();
+    }
+
+    @Test
+    void call_should_submit_the_path() throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve("batch"));
+
+        assertThat(call(batch.toString())).isEqualTo(0);
+
+        verify(defaultApi).importsPost(any(ImportCommandDto.class));
+        assertThat(errorStreamCaptor.toString()).contains("Submitted import job");
+    }
+
+    @Test
+    void call_should_check_the_wait_options_before_submitting() throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve("batch"));
+
+        assertThat(call("--wait", "--timeout", "-1", batch.toString())).isEqualTo(1);
+        assertThat(call("--wait", "--max-interval", "0", batch.toString())).isEqualTo(1);
+
+        verify(defaultApi, never()).importsPost(any(ImportCommandDto.class));
+        assertThat(errorStreamCaptor.toString()).contains("Timeout must not be negative.").contains("Maximum interval must be at least 1 second.");
+    }
+
+    @Test
+    void call_with_from_file_should_skip_blank_and_comment_lines() throws Exception {
+        var batch1 = Files.createDirectories(tempDir.resolve("batch1"));
+        var batch2 = Files.createDirectories(tempDir.resolve("batch2"));
+        var list = Files.writeString(tempDir.resolve("batches.txt"), "# Batches of today\n\n" + batch1 + "\n   \n  " + batch2 + "  \n#" + batch1 + "\n");
+
+        assertThat(call("--from-file", list.toString())).isEqualTo(0);
+
+        assertThat(submittedPaths).containsExactlyInAnyOrder(batch1.toString(), batch2.toString());
+    }
+
+    @Test
+    void call_with_from_file_should_report_each_path_that_could_not_be_submitted_and_submit_the_others() throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve("batch"));
+        var missing = tempDir.resolve("missing");
+        when(defaultApi.importsPost(any(ImportCommandDto.class))).thenAnswer(invocation -> {
+            ImportCommandDto command = invocation.getArgument(0);
+            if (command.getPath().equals(missing.toString())) {
+                throw new ApiException(400, "Path does not exist");
+            }
+            submittedPaths.add(command.getPath());
+            return new ImportJobStatusDto().id(UUID.randomUUID());
+        });
+        var list = Files.writeString(tempDir.resolve("batches.txt"), missing + "\n" + batch + "\n");
+
+        assertThat(call("--from-file", list.toString())).isEqualTo(1);
+
+        assertThat(submittedPaths).containsExactly(batch.toString());
+        assertThat(errorStreamCaptor.toString()).contains("Could not submit import job for " + missing + ": Path does not exist");
+    }
+
+    @Test
+    void call_with_from_file_and_validate_should_submit_nothing_if_a_path_does_not_exist() throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve("batch"));
+        var missing = tempDir.resolve("missing");
+        var importAreaConfig = new ImportAreaConfig();
+        importAreaConfig.setPath(tempDir);
+        importAreaConfig.setFileMode("0644");
+        importAreaConfig.setDirectoryMode("0755");
+        when(context.getImportAreaConfig()).thenReturn(importAreaConfig);
+        var list = Files.writeString(tempDir.resolve("batches.txt"), batch + "\n" + missing + "\n");
+
+        assertThat(call("--from-file", list.toString(), "--validate")).isEqualTo(1);
+
+        verify(defaultApi, never()).importsPost(any(ImportCommandDto.class));
+        assertThat(errorStreamCaptor.toString()).contains(missing + ": not an existing directory").contains("no jobs submitted");
+    }
+
+    @Test
+    void call_with_from_file_should_report_a_missing_list() throws Exception {
+        assertThat(call("--from-file", tempDir.resolve("missing.txt").toString())).isEqualTo(1);
+
+        verify(defaultApi, never()).importsPost(any(ImportCommandDto.class));
+        assertThat(errorStreamCaptor.toString()).contains("Error: " + tempDir.resolve("missing.txt"));
+    }
+}
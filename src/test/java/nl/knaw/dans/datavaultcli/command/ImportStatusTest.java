@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportStatusTest {
+    private static final OffsetDateTime T0 = OffsetDateTime.parse("2024-05-01T12:00:00Z");
+    private static final UUID ID_1 = UUID.fromString("00000000-0000-0000-0000-000000000001");
+    private static final UUID ID_2 = UUID.fromString("00000000-0000-0000-0000-000000000002");
+    private static final UUID ID_3 = UUID.fromString("00000000-0000-0000-0000-000000000003");
+
+    private final Context context = Mockito.mock(Context.class);
+    private final DefaultApi defaultApi = Mockito.mock(DefaultApi.class);
+    private final PrintStream standardOut = System.out;
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream outputStreamCaptor = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(context.getApi()).thenReturn(defaultApi);
+        when(defaultApi.importsGet()).thenReturn(List.of(
+            new ImportJobStatusDto().id(ID_1).path("/import/batch-1/a").status(StatusEnum.SUCCESS).creationTime(T0).finishedTime(T0.plusSeconds(10)),
+            new ImportJobStatusDto().id(ID_2).path("/import/batch-1/b").status(StatusEnum.FAILED).message("Invalid, object").creationTime(T0.plusSeconds(60))
+                .finishedTime(T0.plusSeconds(90)),
+            new ImportJobStatusDto().id(ID_3).path("/import/batch-2/c").status(StatusEnum.RUNNING).creationTime(T0.plusSeconds(120))));
+        System.setOut(new PrintStream(outputStreamCaptor));
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setOut(standardOut);
+        System.setErr(standardErr);
+    }
+
+    private int call(String... args) {
+        var command = new ImportStatus(context);
+        new CommandLine(command).parseArgs(args);
+        return command.call();
+    }
+
+    @Test
+    void call_should_write_csv_with_a_header_and_quoted_fields() {
+        assertThat(call("--all", "--format", "csv")).isEqualTo(0);
+
+        assertThat(outputStreamCaptor.toString().lines().toList()).containsExactly(
+            "id,path,status,created,finished,message",
+            ID_1 + ",/import/batch-1/a,SUCCESS,2024-05-01T12:00:00Z,2024-05-01T12:00:10Z,",
+            ID_2 + ",/import/batch-1/b,FAILED,2024-05-01T12:01:00Z,2024-05-01T12:01:30Z,\"Invalid, object\"",
+            ID_3 + ",/import/batch-2/c,RUNNING,2024-05-01T12:02:00Z,,");
+        // Only JSON output needs the object mapper
+        verify(context, never()).getObjectMapper();
+    }
+
+    @Test
+    void call_should_write_only_the_jobs_selected_by_the_filter() {
+        assertThat(call("--all", "--format", "csv", "--state", "success,running", "--since", "2024-05-01T12:00:30Z", "--path-prefix", "/import/batch-2")).isEqualTo(0);
+
+        assertThat(outputStreamCaptor.toString().lines().toList()).containsExactly(
+            "id,path,status,created,finished,message",
+            ID_3 + ",/import/batch-2/c,RUNNING,2024-05-01T12:02:00Z,,");
+    }
+
+    @Test
+    void call_should_write_a_summary_of_the_selected_jobs() {
+        assertThat(call("--all", "--summary", "--until", "2024-05-01T12:02:00Z")).isEqualTo(0);
+
+        assertThat(outputStreamCaptor.toString().lines().toList()).containsExactly(
+            String.format("%-20s %10s", "STATUS", "COUNT"),
+            String.format("%-20s %10d", "FAILED", 1),
+            String.format("%-20s %10d", "SUCCESS", 1),
+            String.format("%-20s %10d", "TOTAL", 2),
+            "Duration of 2 finished jobs: min 0:00:10, avg 0:00:20, max 0:00:30");
+        verify(context, never()).getObjectMapper();
+    }
+
+    @Test
+    void call_should_fail_if_the_service_does_not_report_the_creation_time_of_a_job_and_a_time_range_is_given() throws Exception {
+        when(defaultApi.importsGet()).thenReturn(List.of(new ImportJobStatusDto().id(ID_1).path("/import/batch-1/a").status(StatusEnum.SUCCESS)));
+
+        assertThat(call("--all", "--format", "csv", "--since", "2024-05-01")).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("creation time of job " + ID_1).contains("--since and --until cannot be used");
+    }
+
+    @Test
+    void call_should_reject_filter_options_without_all() throws Exception {
+        assertThat(call(ID_1.toString(), "--state", "SUCCESS")).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("can only be used with --all");
+        verify(defaultApi, never()).importsGet();
+    }
+
+    @Test
+    void call_should_reject_an_invalid_time() {
+        assertThat(call("--all", "--since", "yesterday")).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("Invalid time: yesterday");
+    }
+}
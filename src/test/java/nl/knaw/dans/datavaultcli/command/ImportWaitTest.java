@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+class ImportWaitTest {
+    private final Context context = Mockito.mock(Context.class);
+    private final DefaultApi defaultApi = Mockito.mock(DefaultApi.class);
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+
+    @BeforeEach
+    void setUp() {
+        when(context.getApi()).thenReturn(defaultApi);
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(standardErr);
+    }
+
+    @Test
+    void waitForJobs_should_return_0_if_all_jobs_succeeded() throws Exception {
+        var id = UUID.randomUUID();
+        when(defaultApi.importsIdGet(id)).thenReturn(new ImportJobStatusDto().id(id).status(StatusEnum.SUCCESS));
+
+        assertThat(ImportWait.waitForJobs(context, List.of(id), null, 1)).isEqualTo(0);
+
+        assertThat(errorStreamCaptor.toString()).contains("1 jobs succeeded, 0 failed, 0 unfinished");
+    }
+
+    @Test
+    void waitForJobs_should_return_1_if_a_job_failed() throws Exception {
+        var id = UUID.randomUUID();
+        when(defaultApi.importsIdGet(id)).thenReturn(new ImportJobStatusDto().id(id).status(StatusEnum.FAILED));
+
+        assertThat(ImportWait.waitForJobs(context, List.of(id), null, 1)).isEqualTo(1);
+    }
+
+    @Test
+    void waitForJobs_should_return_exit_timeout_if_a_job_has_not_finished() throws Exception {
+        var id = UUID.randomUUID();
+        when(defaultApi.importsIdGet(id)).thenReturn(new ImportJobStatusDto().id(id).status(StatusEnum.RUNNING));
+
+        assertThat(ImportWait.waitForJobs(context, List.of(id), 0L, 1)).isEqualTo(ImportWait.EXIT_TIMEOUT);
+
+        assertThat(errorStreamCaptor.toString()).contains("0 jobs succeeded, 0 failed, 1 unfinished");
+    }
+
+    @Test
+    void waitForJobs_should_return_exit_timeout_if_jobs_were_still_being_submitted() throws Exception {
+        var ids = new ConcurrentLinkedQueue<UUID>();
+
+        assertThat(ImportWait.waitForJobs(context, ids, () -> false, () -> 0, 0L, 1, id -> { })).isEqualTo(ImportWait.EXIT_TIMEOUT);
+
+        assertThat(errorStreamCaptor.toString()).contains("The timeout expired before all jobs were submitted.");
+    }
+
+    @Test
+    void waitForJobs_should_reject_a_negative_timeout() throws Exception {
+        assertThat(ImportWait.waitForJobs(context, List.of(UUID.randomUUID()), -1L, 1)).isEqualTo(1);
+
+        assertThat(errorStreamCaptor.toString()).contains("Timeout must not be negative.");
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.command;
+
+import nl.knaw.dans.datavaultcli.Context;
+import nl.knaw.dans.datavaultcli.api.ImportCommandDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import nl.knaw.dans.datavaultcli.config.ImportAreaConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportWatchTest {
+    private final Context context = Mockito.mock(Context.class);
+    private final DefaultApi defaultApi = Mockito.mock(DefaultApi.class);
+    private final PrintStream standardErr = System.err;
+    private final ByteArrayOutputStream errorStreamCaptor = new ByteArrayOutputStream();
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        var importAreaConfig = new ImportAreaConfig();
+        importAreaConfig.setPath(tempDir);
+        when(context.getImportAreaConfig()).thenReturn(importAreaConfig);
+        when(context.getApi()).thenReturn(defaultApi);
+        when(defaultApi.importsPost(any(ImportCommandDto.class))).thenAnswer(invocation -> new ImportJobStatusDto().id(UUID.randomUUID()));
+        System.setErr(new PrintStream(errorStreamCaptor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        System.setErr(standardErr);
+    }
+
+    @Test
+    void call_should_skip_batches_of_which_objects_were_already_submitted() throws Exception {
+        var copied = Files.createDirectories(tempDir.resolve("copied"));
+        Files.createDirectories(copied.resolve("object/v1"));
+        Files.createDirectories(tempDir.resolve("new/object/v1"));
+        Files.createFile(copied.resolve("DONE"));
+        Files.createFile(tempDir.resolve("new/DONE"));
+        // As submitted by copy-batch --import
+        when(defaultApi.importsGet()).thenReturn(List.of(new ImportJobStatusDto().id(UUID.randomUUID()).path(copied.resolve("object").toAbsolutePath().toString())
+            .status(StatusEnum.RUNNING)));
+
+        var command = new ImportWatch(context);
+        new CommandLine(command).parseArgs("--marker", "DONE", "--poll", "--scan-interval", "1");
+        var thread = new Thread(() -> {
+            try {
+                command.call();
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        var submittedFile = tempDir.resolve(ImportWatch.SUBMITTED_FILENAME);
+        for (int i = 0; i < 100 && (!Files.exists(submittedFile) || Files.readAllLines(submittedFile, StandardCharsets.UTF_8).size() < 2); i++) {
+            Thread.sleep(100);
+        }
+        thread.interrupt();
+        thread.join();
+
+        var captor = ArgumentCaptor.forClass(ImportCommandDto.class);
+        verify(defaultApi, atLeastOnce()).importsPost(captor.capture());
+        assertThat(captor.getAllValues()).extracting(ImportCommandDto::getPath).containsExactly(tempDir.resolve("new").toAbsolutePath().toString());
+        assertThat(Files.readAllLines(submittedFile, StandardCharsets.UTF_8)).containsExactlyInAnyOrder("copied", "new");
+        assertThat(errorStreamCaptor.toString()).contains("Skipping " + copied + ": import jobs were already submitted for it or its objects");
+    }
+}
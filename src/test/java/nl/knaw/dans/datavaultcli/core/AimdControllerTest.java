@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AimdControllerTest {
+    private static final Duration FAST = Duration.ofMillis(20);
+
+    private static void succeed(AimdController controller, int times) throws InterruptedException {
+        for (int i = 0; i < times; i++) {
+            var ticket = controller.acquire();
+            controller.onSuccess(ticket, FAST);
+            controller.release();
+        }
+    }
+
+    @Test
+    void onSuccess_should_raise_the_limit_by_about_one_per_round() throws Exception {
+        var controller = new AimdController(1, 1, 100);
+
+        succeed(controller, 1);
+        assertThat(controller.getLimit()).isEqualTo(2);
+        // 2 + 1/2 + 1/2.5 = 2.9, so the third success of this round raises the limit to 3
+        succeed(controller, 2);
+        assertThat(controller.getLimit()).isEqualTo(2);
+        succeed(controller, 1);
+        assertThat(controller.getLimit()).isEqualTo(3);
+    }
+
+    @Test
+    void onSuccess_should_not_raise_the_limit_above_the_maximum() throws Exception {
+        var controller = new AimdController(1, 1, 4);
+
+        succeed(controller, 100);
+
+        assertThat(controller.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void onOverload_should_halve_the_limit_once_per_round() throws Exception {
+        var controller = new AimdController(16, 1, 16);
+        var before = controller.acquire();
+        var alsoBefore = controller.acquire();
+
+        controller.onOverload(before);
+        assertThat(controller.getLimit()).isEqualTo(8);
+        // Started before the decrease, so part of the same overload
+        controller.onOverload(alsoBefore);
+        assertThat(controller.getLimit()).isEqualTo(8);
+        controller.onOverload(controller.acquire());
+        assertThat(controller.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void onOverload_should_not_lower_the_limit_below_the_minimum() throws Exception {
+        var controller = new AimdController(4, 2, 4);
+
+        for (int i = 0; i < 5; i++) {
+            var ticket = controller.acquire();
+            controller.onOverload(ticket);
+            controller.release();
+        }
+
+        assertThat(controller.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    void onSuccess_should_halve_the_limit_if_the_latency_is_much_higher_than_the_lowest() throws Exception {
+        var controller = new AimdController(8, 1, 8);
+        succeed(controller, 1);
+
+        var ticket = controller.acquire();
+        controller.onSuccess(ticket, Duration.ofMillis(500));
+
+        assertThat(controller.getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    void acquire_should_block_while_the_limit_is_reached() throws Exception {
+        var controller = new AimdController(1, 1, 1);
+        controller.acquire();
+
+        var second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return controller.acquire();
+            }
+            catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThatThrownBy(() -> second.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        controller.release();
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1L);
+        assertThat(controller.getInFlight()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchCopierTest {
+    @TempDir
+    Path tempDir;
+
+    private BatchCopier.BatchCopierBuilder copier() {
+        return BatchCopier.builder()
+            .threads(4)
+            .filePermissions(PosixFilePermissions.fromString("rw-rw----"))
+            .directoryPermissions(PosixFilePermissions.fromString("rwxrwx---"));
+    }
+
+    @Test
+    void copy_should_copy_all_files_and_directories() throws Exception {
+        var source = tempDir.resolve("source");
+        for (int i = 0; i < 10; i++) {
+            var objectDir = Files.createDirectories(source.resolve("object" + i).resolve("v1"));
+            for (int j = 0; j < 10; j++) {
+                Files.writeString(objectDir.resolve("file" + j + ".txt"), "content " + i + "-" + j);
+            }
+        }
+        Files.createDirectories(source.resolve("empty"));
+        var target = tempDir.resolve("target");
+
+        copier().build().copy(source, target);
+
+        assertThat(target.resolve("empty")).isEmptyDirectory();
+        for (int i = 0; i < 10; i++) {
+            for (int j = 0; j < 10; j++) {
+                assertThat(target.resolve("object" + i).resolve("v1").resolve("file" + j + ".txt")).hasContent("content " + i + "-" + j);
+            }
+        }
+    }
+
+    @Test
+    void copy_should_preserve_last_modified_time_of_files() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var file = Files.writeString(source.resolve("file.txt"), "content");
+        var lastModified = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(file, lastModified);
+        var target = tempDir.resolve("target");
+
+        copier().threads(2).build().copy(source, target);
+
+        assertThat(Files.getLastModifiedTime(target.resolve("file.txt"))).isEqualTo(lastModified);
+    }
+
+    @Test
+    void copy_should_set_configured_permissions_on_files_and_directories() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object/v1"));
+        Files.writeString(source.resolve("file.txt"), "content");
+        var target = tempDir.resolve("target");
+
+        copier().build().copy(tempDir.resolve("source"), target);
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target))).isEqualTo("rwxrwx---");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("object/v1")))).isEqualTo("rwxrwx---");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("object/v1/file.txt")))).isEqualTo("rw-rw----");
+    }
+
+    @Test
+    void copy_should_skip_entries_recorded_in_journal_when_resuming() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        Files.createDirectories(source.resolve("object1"));
+        Files.writeString(source.resolve("object1/file.txt"), "new content");
+        Files.createDirectories(source.resolve("object2"));
+        Files.writeString(source.resolve("object2/file.txt"), "new content");
+        var target = Files.createDirectories(tempDir.resolve("target"));
+        Files.createDirectories(target.resolve("object1"));
+        Files.writeString(target.resolve("object1/file.txt"), "old content");
+        Files.createDirectories(target.resolve("object2"));
+        Files.writeString(target.resolve("object2/file.txt"), "partial");
+        // The entry for object2/file.txt was not completely written
+        Files.writeString(target.resolve(CopyJournal.FILENAME), "object1\nobject2/file.txt");
+
+        copier().resume(true).build().copy(source, target);
+
+        assertThat(target.resolve("object1/file.txt")).hasContent("old content");
+        assertThat(target.resolve("object2/file.txt")).hasContent("new content");
+        assertThat(target.resolve(CopyJournal.FILENAME)).doesNotExist();
+    }
+
+    @Test
+    void incremental_copy_should_copy_changed_files_and_remove_files_not_in_source() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("unchanged.txt"), "unchanged");
+        Files.writeString(source.resolve("changed.txt"), "old");
+        Files.writeString(source.resolve("removed.txt"), "removed");
+        var target = tempDir.resolve("target");
+        copier().build().copy(tempDir.resolve("source"), target);
+        Files.writeString(source.resolve("changed.txt"), "new content");
+        Files.delete(source.resolve("removed.txt"));
+
+        var statistics = copier().incremental(true).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(target.resolve("object/changed.txt")).hasContent("new content");
+        assertThat(target.resolve("object/removed.txt")).doesNotExist();
+        assertThat(statistics.getFilesCopied()).isEqualTo(1);
+        assertThat(statistics.getFilesUnchanged()).isEqualTo(1);
+        assertThat(statistics.getBytesUnchanged()).isEqualTo("unchanged".length());
+        assertThat(statistics.getEntriesRemoved()).isEqualTo(1);
+    }
+
+    @Test
+    void copy_with_manifest_algorithms_should_write_a_manifest_per_algorithm() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object/v1"));
+        Files.writeString(source.resolve("file1.txt"), "content 1");
+        Files.writeString(source.resolve("file2.txt"), "content 2");
+        Files.createSymbolicLink(source.resolve("link.txt"), Path.of("file1.txt"));
+        var target = tempDir.resolve("target");
+
+        copier().manifestAlgorithms(List.of(ChecksumAlgorithm.MD5, ChecksumAlgorithm.SHA256)).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(Files.readAllLines(ChecksumManifest.getManifestFile(target, ChecksumAlgorithm.MD5))).containsExactlyInAnyOrder(
+            manifestLine("MD5", "content 1", "object/v1/file1.txt"),
+            manifestLine("MD5", "content 2", "object/v1/file2.txt"));
+        assertThat(Files.readAllLines(ChecksumManifest.getManifestFile(target, ChecksumAlgorithm.SHA256))).containsExactlyInAnyOrder(
+            manifestLine("SHA-256", "content 1", "object/v1/file1.txt"),
+            manifestLine("SHA-256", "content 2", "object/v1/file2.txt"));
+    }
+
+    @Test
+    void incremental_copy_with_manifest_algorithms_should_keep_the_entries_of_unchanged_files() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("unchanged.txt"), "unchanged");
+        Files.writeString(source.resolve("changed.txt"), "old");
+        Files.writeString(source.resolve("removed.txt"), "removed");
+        var target = tempDir.resolve("target");
+        copier().manifestAlgorithms(List.of(ChecksumAlgorithm.SHA256)).build().copy(tempDir.resolve("source"), target);
+        Files.writeString(source.resolve("changed.txt"), "new content");
+        Files.delete(source.resolve("removed.txt"));
+
+        var statistics = copier().incremental(true).manifestAlgorithms(List.of(ChecksumAlgorithm.SHA256)).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(statistics.getFilesUnchanged()).isEqualTo(1);
+        assertThat(Files.readAllLines(ChecksumManifest.getManifestFile(target, ChecksumAlgorithm.SHA256))).containsExactlyInAnyOrder(
+            manifestLine("SHA-256", "unchanged", "object/unchanged.txt"),
+            manifestLine("SHA-256", "new content", "object/changed.txt"));
+    }
+
+    private static String manifestLine(String algorithm, String content, String relativePath) throws Exception {
+        var digest = MessageDigest.getInstance(algorithm).digest(content.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest) + "  " + relativePath;
+    }
+
+    @Test
+    void staged_copy_should_publish_the_target_only_when_the_copy_has_completed() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("file.txt"), "content");
+        var target = tempDir.resolve("target");
+        var staging = BatchCopier.getStagingDirectory(target);
+        var targetExistedWhileCopying = new ConcurrentLinkedQueue<Boolean>();
+
+        copier().staged(true)
+            .manifestAlgorithms(List.of(ChecksumAlgorithm.SHA256))
+            .objectCopiedListener(directory -> {
+                assertThat(directory.getParent()).isEqualTo(staging);
+                targetExistedWhileCopying.add(Files.exists(target));
+            })
+            .build().copy(tempDir.resolve("source"), target);
+
+        assertThat(targetExistedWhileCopying).containsExactly(false);
+        assertThat(target.resolve("object/file.txt")).hasContent("content");
+        assertThat(staging).doesNotExist();
+        assertThat(ChecksumManifest.getManifestFile(target, ChecksumAlgorithm.SHA256)).exists();
+        assertThat(ChecksumManifest.getManifestFile(staging, ChecksumAlgorithm.SHA256)).doesNotExist();
+    }
+
+    @Test
+    void staged_copy_that_fails_should_leave_no_partial_target() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        Files.createDirectories(source.resolve("object1"));
+        Files.writeString(source.resolve("object1/file.txt"), "content");
+        Files.createDirectories(source.resolve("object2"));
+        Files.writeString(source.resolve("object2/file.txt"), "content");
+        var target = tempDir.resolve("target");
+
+        assertThatThrownBy(() -> copier().staged(true)
+            .objectCopiedListener(directory -> {
+                throw new IOException("Failed");
+            })
+            .build().copy(source, target))
+            .isInstanceOf(IOException.class);
+
+        assertThat(target).doesNotExist();
+    }
+
+    @Test
+    void copy_should_extract_zip_archive_with_configured_permissions() throws Exception {
+        var archive = tempDir.resolve("batch.zip");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            for (int i = 0; i < 20; i++) {
+                zip.putNextEntry(new ZipEntry("object" + i + "/v1/file.txt"));
+                zip.write(("content " + i).getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        var target = tempDir.resolve("target");
+
+        var statistics = copier().build().copy(archive, target);
+
+        assertThat(statistics.getFilesCopied()).isEqualTo(20);
+        for (int i = 0; i < 20; i++) {
+            var file = target.resolve("object" + i).resolve("v1").resolve("file.txt");
+            assertThat(file).hasContent("content " + i);
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-rw----");
+            assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParent()))).isEqualTo("rwxrwx---");
+        }
+    }
+
+    @Test
+    void copy_should_refuse_archive_entries_outside_target() throws Exception {
+        var archive = tempDir.resolve("batch.zip");
+        try (var zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("../outside.txt"));
+            zip.closeEntry();
+        }
+        var target = tempDir.resolve("target");
+
+        assertThatThrownBy(() -> copier().build().copy(archive, target)).isInstanceOf(IOException.class);
+        assertThat(tempDir.resolve("outside.txt")).doesNotExist();
+    }
+
+    @Test
+    void copy_should_report_each_object_once_it_has_been_copied() throws Exception {
+        var source = tempDir.resolve("source");
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(Files.createDirectories(source.resolve("object" + i).resolve("v1")).resolve("file.txt"), "content " + i);
+        }
+        var target = tempDir.resolve("target");
+        var copied = new ConcurrentLinkedQueue<Path>();
+
+        copier().objectCopiedListener(directory -> {
+            assertThat(directory.resolve("v1").resolve("file.txt")).exists();
+            copied.add(directory);
+        }).build().copy(source, target);
+
+        assertThat(copied).containsExactlyInAnyOrder(
+            target.resolve("object0"), target.resolve("object1"), target.resolve("object2"), target.resolve("object3"), target.resolve("object4"));
+    }
+
+    @Test
+    void copy_should_copy_large_files_in_chunks() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source"));
+        var content = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        Files.write(source.resolve("large.bin"), content);
+        Files.writeString(source.resolve("small.txt"), "content");
+        var target = tempDir.resolve("target");
+
+        copier().transferMode(TransferMode.CHANNEL).largeFileThreshold(1024 * 1024).build().copy(source, target);
+
+        assertThat(Files.readAllBytes(target.resolve("large.bin"))).isEqualTo(content);
+        assertThat(target.resolve("small.txt")).hasContent("content");
+    }
+
+    @Test
+    void copy_with_transfer_mode_channel_should_copy_files_of_any_size() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        // Larger than one kernel-side transfer
+        var content = new byte[9 * 1024 * 1024 + 5];
+        new Random(42).nextBytes(content);
+        Files.write(source.resolve("large.bin"), content);
+        Files.writeString(source.resolve("small.txt"), "content");
+        Files.createFile(source.resolve("empty.txt"));
+        var target = tempDir.resolve("target");
+
+        var statistics = copier().transferMode(TransferMode.CHANNEL).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(Files.readAllBytes(target.resolve("object/large.bin"))).isEqualTo(content);
+        assertThat(target.resolve("object/small.txt")).hasContent("content");
+        assertThat(Files.size(target.resolve("object/empty.txt"))).isEqualTo(0L);
+        assertThat(statistics.getFilesCopied()).isEqualTo(3);
+        assertThat(statistics.getBytesTransferred()).isEqualTo(content.length + 7L);
+    }
+
+    @Test
+    void copy_with_transfer_mode_reflink_should_create_independent_copies() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        // Large enough to be reflinked; smaller files are copied kernel-side right away
+        var content = new byte[2 * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        Files.write(source.resolve("large.bin"), content);
+        Files.writeString(source.resolve("small.txt"), "content");
+        var target = tempDir.resolve("target");
+
+        // On file systems without reflinks, such as ext4 and tmpfs, cp --reflink=always fails and the file is copied kernel-side instead
+        var statistics = copier().transferMode(TransferMode.REFLINK).build().copy(tempDir.resolve("source"), target);
+        Files.write(source.resolve("large.bin"), new byte[] { 1, 2, 3 });
+
+        assertThat(Files.readAllBytes(target.resolve("object/large.bin"))).isEqualTo(content);
+        assertThat(target.resolve("object/small.txt")).hasContent("content");
+        assertThat(Files.isSameFile(source.resolve("small.txt"), target.resolve("object/small.txt"))).isFalse();
+        assertThat(statistics.getBytesTransferred()).isEqualTo(content.length + 7L);
+        try (var entries = Files.list(target.resolve("object"))) {
+            assertThat(entries.map(entry -> entry.getFileName().toString()).toList()).containsExactlyInAnyOrder("large.bin", "small.txt");
+        }
+    }
+
+    @Test
+    void copy_with_transfer_mode_hardlink_should_link_the_target_files_to_the_source_files() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("file.txt"), "content");
+        Files.setPosixFilePermissions(source.resolve("file.txt"), PosixFilePermissions.fromString("rw-------"));
+        var target = tempDir.resolve("target");
+
+        copier().transferMode(TransferMode.HARDLINK).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(Files.isSameFile(source.resolve("file.txt"), target.resolve("object/file.txt"))).isTrue();
+        // The link shares its permissions with the source file
+        assertThat(Files.getPosixFilePermissions(source.resolve("file.txt"))).isEqualTo(PosixFilePermissions.fromString("rw-rw----"));
+    }
+
+    @Test
+    void copy_with_transfer_mode_move_should_move_the_source_files() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("file.txt"), "content");
+        Files.createSymbolicLink(source.resolve("link.txt"), Path.of("file.txt"));
+        var target = tempDir.resolve("target");
+
+        copier().transferMode(TransferMode.MOVE).build().copy(tempDir.resolve("source"), target);
+
+        assertThat(target.resolve("object/file.txt")).hasContent("content");
+        assertThat(Files.readSymbolicLink(target.resolve("object/link.txt"))).isEqualTo(Path.of("file.txt"));
+        assertThat(source.resolve("file.txt")).doesNotExist();
+        assertThat(source.resolve("link.txt")).doesNotExist();
+    }
+
+    @Test
+    void copy_with_dedup_index_should_link_identical_files_within_and_across_batches() throws Exception {
+        var source = tempDir.resolve("source");
+        for (int i = 0; i < 3; i++) {
+            var objectDir = Files.createDirectories(source.resolve("object" + i));
+            Files.writeString(objectDir.resolve("licence.txt"), "the same licence");
+            Files.writeString(objectDir.resolve("data.txt"), "data " + i);
+        }
+        var importArea = Files.createDirectories(tempDir.resolve("import-area"));
+
+        try (var index = DedupIndex.open(importArea)) {
+            // One thread, so that no two identical files are copied at the same time
+            var statistics = copier().threads(1).dedupIndex(index).build().copy(source, importArea.resolve("batch1"));
+            assertThat(statistics.getFilesDeduplicated()).isEqualTo(2);
+        }
+        try (var index = DedupIndex.open(importArea)) {
+            var statistics = copier().dedupIndex(index).build().copy(source, importArea.resolve("batch2"));
+            assertThat(statistics.getFilesDeduplicated()).isEqualTo(6);
+        }
+
+        var first = importArea.resolve("batch1/object0/licence.txt");
+        assertThat(Files.isSameFile(first, importArea.resolve("batch1/object2/licence.txt"))).isTrue();
+        assertThat(Files.isSameFile(first, importArea.resolve("batch2/object1/licence.txt"))).isTrue();
+        assertThat(importArea.resolve("batch2/object1/data.txt")).hasContent("data 1");
+    }
+
+    @Test
+    void copy_with_dedup_index_should_not_change_the_permissions_of_the_file_that_is_linked_to() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("file.txt"), "the same content");
+        var importArea = Files.createDirectories(tempDir.resolve("import-area"));
+        try (var index = DedupIndex.open(importArea)) {
+            copier().dedupIndex(index).build().copy(tempDir.resolve("source"), importArea.resolve("batch1"));
+        }
+        var indexed = importArea.resolve("batch1/object/file.txt");
+        Files.setPosixFilePermissions(indexed, PosixFilePermissions.fromString("r--r-----"));
+
+        try (var index = DedupIndex.open(importArea)) {
+            copier().dedupIndex(index).build().copy(tempDir.resolve("source"), importArea.resolve("batch2"));
+        }
+
+        assertThat(Files.isSameFile(indexed, importArea.resolve("batch2/object/file.txt"))).isTrue();
+        assertThat(Files.getPosixFilePermissions(indexed)).isEqualTo(PosixFilePermissions.fromString("r--r-----"));
+    }
+
+    @Test
+    void incremental_copy_should_not_change_file_that_a_deduplicated_file_is_linked_to() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        Files.writeString(source.resolve("file.txt"), "original");
+        var importArea = Files.createDirectories(tempDir.resolve("import-area"));
+        try (var index = DedupIndex.open(importArea)) {
+            copier().dedupIndex(index).build().copy(tempDir.resolve("source"), importArea.resolve("batch1"));
+        }
+        try (var index = DedupIndex.open(importArea)) {
+            copier().dedupIndex(index).build().copy(tempDir.resolve("source"), importArea.resolve("batch2"));
+        }
+        assertThat(Files.isSameFile(importArea.resolve("batch1/object/file.txt"), importArea.resolve("batch2/object/file.txt"))).isTrue();
+        Files.writeString(source.resolve("file.txt"), "changed content");
+
+        copier().incremental(true).build().copy(tempDir.resolve("source"), importArea.resolve("batch2"));
+
+        assertThat(importArea.resolve("batch2/object/file.txt")).hasContent("changed content");
+        assertThat(importArea.resolve("batch1/object/file.txt")).hasContent("original");
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BatchSharderTest {
+    @TempDir
+    Path tempDir;
+
+    private Path createBatch(int objects) throws Exception {
+        var batch = tempDir.resolve("batch");
+        for (int i = 1; i <= objects; i++) {
+            Files.createDirectories(batch.resolve(String.format("object-%02d/v1", i)));
+        }
+        return batch;
+    }
+
+    private static List<String> list(Path dir) throws Exception {
+        try (var entries = Files.list(dir)) {
+            return entries.map(entry -> entry.getFileName().toString()).sorted().toList();
+        }
+    }
+
+    @Test
+    void splitInto_should_distribute_the_objects_evenly_and_remove_the_batch() throws Exception {
+        var batch = createBatch(5);
+
+        var shards = BatchSharder.splitInto(batch, 2);
+
+        assertThat(shards).containsExactly(tempDir.resolve("batch-shard-1"), tempDir.resolve("batch-shard-2"));
+        assertThat(list(shards.get(0))).containsExactly("object-01", "object-02");
+        assertThat(list(shards.get(1))).containsExactly("object-03", "object-04", "object-05");
+        assertThat(batch).doesNotExist();
+    }
+
+    @Test
+    void splitBySize_should_limit_the_number_of_objects_per_shard() throws Exception {
+        var batch = createBatch(10);
+        Files.writeString(batch.resolve("README.txt"), "not an object");
+
+        var shards = BatchSharder.splitBySize(batch, 3);
+
+        assertThat(shards).hasSize(4);
+        assertThat(shards.get(0).getFileName()).hasToString("batch-shard-1");
+        for (var shard : shards) {
+            assertThat(list(shard).size()).isBetween(2, 3);
+        }
+        assertThat(list(batch)).containsExactly("README.txt");
+    }
+
+    @Test
+    void splitBySize_should_not_split_a_batch_that_is_small_enough() throws Exception {
+        var batch = createBatch(3);
+
+        assertThat(BatchSharder.splitBySize(batch, 3)).containsExactly(batch);
+        assertThat(list(batch)).hasSize(3);
+    }
+
+    @Test
+    void splitInto_should_leave_the_batch_intact_if_a_shard_exists() throws Exception {
+        var batch = createBatch(4);
+        Files.createDirectories(tempDir.resolve("batch-shard-2"));
+
+        assertThatThrownBy(() -> BatchSharder.splitInto(batch, 2)).isInstanceOf(FileAlreadyExistsException.class);
+        assertThat(list(batch)).hasSize(4);
+        assertThat(tempDir.resolve("batch-shard-1")).doesNotExist();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.core.BatchValidator.Problem;
+import nl.knaw.dans.datavaultcli.core.BatchValidator.Severity;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class BatchValidatorTest {
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+    private static final Set<PosixFilePermission> DIRECTORY_PERMISSIONS = PosixFilePermissions.fromString("rwxr-xr-x");
+
+    @TempDir
+    Path tempDir;
+
+    private final BatchValidator validator = new BatchValidator(2, FILE_PERMISSIONS, DIRECTORY_PERMISSIONS);
+
+    private void createDirectory(String path) throws Exception {
+        var dir = tempDir;
+        for (var name : Path.of(path)) {
+            dir = dir.resolve(name);
+            Files.createDirectories(dir);
+            Files.setPosixFilePermissions(dir, DIRECTORY_PERMISSIONS);
+        }
+    }
+
+    private void createFile(String path, String content) throws Exception {
+        var file = Files.writeString(tempDir.resolve(path), content);
+        Files.setPosixFilePermissions(file, FILE_PERMISSIONS);
+    }
+
+    @Test
+    void validate_should_accept_a_well_formed_batch() throws Exception {
+        createDirectory("batch/object-1/v1/data");
+        createFile("batch/object-1/v1/data/file.txt", "content");
+        createDirectory("batch/object-2/v2");
+        createDirectory("batch/object-2/v3");
+        createFile("batch/object-2/v2/file.txt", "content");
+        createFile("batch/object-2/v3/file.txt", "more content");
+
+        var result = validator.validate(tempDir.resolve("batch"), false);
+
+        assertThat(result.getProblems()).isEmpty();
+        assertThat(result.getObjects()).isEqualTo(2);
+        assertThat(result.getFiles()).isEqualTo(3);
+    }
+
+    @Test
+    void validate_should_report_all_problems() throws Exception {
+        createDirectory("batch/no-versions/content");
+        createDirectory("batch/gap/v1");
+        createDirectory("batch/gap/v3");
+        createFile("batch/gap/v1/empty.txt", "");
+        createFile("batch/gap/v3/file.txt", "content");
+        createFile("batch/gap/README.txt", "content");
+        createFile("batch/stray.txt", "content");
+        createDirectory("batch/permissions/v1");
+        createFile("batch/permissions/v1/file.txt", "content");
+        Files.setPosixFilePermissions(tempDir.resolve("batch/permissions/v1/file.txt"), PosixFilePermissions.fromString("rw-------"));
+
+        var result = validator.validate(tempDir.resolve("batch"), false);
+
+        assertThat(result.getProblems()).extracting(Problem::getPath, Problem::getSeverity).containsExactly(
+            tuple("gap", Severity.ERROR),
+            tuple("gap/README.txt", Severity.WARNING),
+            tuple("gap/v1/empty.txt", Severity.WARNING),
+            tuple("no-versions", Severity.ERROR),
+            tuple("no-versions/content", Severity.WARNING),
+            tuple("permissions/v1/file.txt", Severity.ERROR),
+            tuple("stray.txt", Severity.ERROR));
+        assertThat(result.isValid()).isFalse();
+    }
+
+    @Test
+    void validate_should_warn_about_symbolic_links_in_objects() throws Exception {
+        createDirectory("batch/object/v1");
+        createFile("batch/object/v1/file.txt", "content");
+        Files.createSymbolicLink(tempDir.resolve("batch/object/v1/link.txt"), Path.of("file.txt"));
+        Files.createSymbolicLink(tempDir.resolve("batch/object/v1/dangling.txt"), Path.of("does-not-exist.txt"));
+
+        var result = validator.validate(tempDir.resolve("batch"), false);
+
+        assertThat(result.getProblems()).extracting(Problem::getPath, Problem::getSeverity, Problem::getMessage).containsExactly(
+            tuple("object/v1/dangling.txt", Severity.WARNING, "dangling symbolic link"),
+            tuple("object/v1/link.txt", Severity.WARNING, "symbolic link"));
+        assertThat(result.isValid()).isTrue();
+    }
+
+    @Test
+    void validate_should_treat_the_path_as_the_object_for_a_single_object() throws Exception {
+        createDirectory("object/v1");
+        createFile("object/v1/file.txt", "content");
+
+        var result = validator.validate(tempDir.resolve("object"), true);
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getObjects()).isEqualTo(1);
+    }
+}
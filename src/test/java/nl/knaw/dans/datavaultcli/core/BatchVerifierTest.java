@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.core.BatchVerifier.Mismatch;
+import nl.knaw.dans.datavaultcli.core.BatchVerifier.MismatchType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class BatchVerifierTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void verify_should_accept_identical_trees() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object/v1"));
+        var target = Files.createDirectories(tempDir.resolve("target/object/v1"));
+        Files.writeString(source.resolve("file.txt"), "content");
+        Files.writeString(target.resolve("file.txt"), "content");
+
+        var result = new BatchVerifier(2).verify(tempDir.resolve("source"), tempDir.resolve("target"));
+
+        assertThat(result.isIdentical()).isTrue();
+        assertThat(result.getFilesVerified()).isEqualTo(1);
+    }
+
+    @Test
+    void verify_should_report_all_kinds_of_mismatches() throws Exception {
+        var source = Files.createDirectories(tempDir.resolve("source/object"));
+        var target = Files.createDirectories(tempDir.resolve("target/object"));
+        Files.writeString(source.resolve("same.txt"), "same");
+        Files.writeString(target.resolve("same.txt"), "same");
+        Files.writeString(source.resolve("changed.txt"), "abc");
+        Files.writeString(target.resolve("changed.txt"), "aXc");
+        Files.writeString(source.resolve("truncated.txt"), "abc");
+        Files.writeString(target.resolve("truncated.txt"), "ab");
+        Files.writeString(source.resolve("missing.txt"), "abc");
+        Files.writeString(target.resolve("extra.txt"), "abc");
+
+        var result = new BatchVerifier(4).verify(tempDir.resolve("source"), tempDir.resolve("target"));
+
+        assertThat(result.getFilesVerified()).isEqualTo(1);
+        assertThat(result.getMismatches()).extracting(Mismatch::getPath, Mismatch::getType).containsExactly(
+            tuple("object/changed.txt", MismatchType.CONTENT),
+            tuple("object/extra.txt", MismatchType.EXTRA),
+            tuple("object/missing.txt", MismatchType.MISSING),
+            tuple("object/truncated.txt", MismatchType.SIZE));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchWatcherTest {
+    @TempDir
+    Path tempDir;
+
+    private final List<String> reported = new CopyOnWriteArrayList<>();
+
+    private Thread start(BatchWatcher watcher) {
+        var thread = new Thread(() -> {
+            try {
+                watcher.run(batch -> reported.add(batch.getFileName().toString()));
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private void awaitReported(int count) throws InterruptedException {
+        for (int i = 0; i < 100 && reported.size() < count; i++) {
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    void run_should_report_batches_once_they_contain_the_marker() throws Exception {
+        Files.createDirectories(tempDir.resolve("incomplete"));
+        Files.createDirectories(tempDir.resolve("complete"));
+        Files.createFile(tempDir.resolve("complete/DONE"));
+        Files.createDirectories(tempDir.resolve(".hidden"));
+        Files.createFile(tempDir.resolve(".hidden/DONE"));
+        Files.createDirectories(tempDir.resolve("copying"));
+        Files.createFile(tempDir.resolve("copying/DONE"));
+        Files.createFile(tempDir.resolve("copying").resolve(CopyJournal.FILENAME));
+
+        var thread = start(new BatchWatcher(tempDir, "DONE", Duration.ZERO, Duration.ofSeconds(1), true, Set.of()));
+        awaitReported(1);
+        Files.createFile(tempDir.resolve("incomplete/DONE"));
+        awaitReported(2);
+        thread.interrupt();
+        thread.join();
+
+        assertThat(reported).containsExactly("complete", "incomplete");
+    }
+
+    @Test
+    void run_should_report_batches_that_have_not_changed_during_the_quiet_period() throws Exception {
+        Files.createDirectories(tempDir.resolve("submitted-before/object"));
+        Files.createDirectories(tempDir.resolve("new/object"));
+        Files.writeString(tempDir.resolve("new/object/file.txt"), "content");
+
+        var thread = start(new BatchWatcher(tempDir, null, Duration.ofSeconds(1), Duration.ofSeconds(60), false, Set.of("submitted-before")));
+        awaitReported(1);
+        Files.createDirectories(tempDir.resolve("later/object"));
+        awaitReported(2);
+        thread.interrupt();
+        thread.join();
+
+        assertThat(reported).containsExactly("new", "later");
+    }
+
+    @Test
+    void run_should_report_a_batch_with_a_dangling_link_once_it_is_quiet() throws Exception {
+        Files.createDirectories(tempDir.resolve("batch/object/v1"));
+        Files.createSymbolicLink(tempDir.resolve("batch/object/v1/link"), tempDir.resolve("does-not-exist"));
+
+        var thread = start(new BatchWatcher(tempDir, null, Duration.ofSeconds(1), Duration.ofSeconds(60), true, Set.of()));
+        awaitReported(1);
+        thread.interrupt();
+        thread.join();
+
+        assertThat(reported).containsExactly("batch");
+    }
+
+    @Test
+    void run_should_report_a_released_batch_again() throws Exception {
+        Files.createDirectories(tempDir.resolve("batch"));
+        Files.createFile(tempDir.resolve("batch/DONE"));
+
+        var watcher = new BatchWatcher(tempDir, "DONE", Duration.ZERO, Duration.ofSeconds(1), true, Set.of());
+        var thread = new Thread(() -> {
+            try {
+                watcher.run(batch -> {
+                    if (reported.isEmpty()) {
+                        watcher.release(batch);
+                    }
+                    reported.add(batch.getFileName().toString());
+                });
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        awaitReported(2);
+        thread.interrupt();
+        thread.join();
+
+        assertThat(reported).containsExactly("batch", "batch");
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.core.CleanupPlan.Candidate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CleanupPlanTest {
+    // Some days ahead, so that the jobs in the tests finish after the directories were created, as the status change times of those cannot be set
+    private static final Instant NOW = Instant.now().plus(Duration.ofDays(3));
+
+    @TempDir
+    Path tempDir;
+
+    private JobRecord job(String id, Path path, String status, Instant created, Instant finished) {
+        return new JobRecord(id, path.toString(), status, null, created, finished, null);
+    }
+
+    private Path batch(String name) throws Exception {
+        var batch = Files.createDirectories(tempDir.resolve(name));
+        // Staged well before the jobs in the tests finished
+        Files.setLastModifiedTime(batch, FileTime.from(NOW.minus(Duration.ofDays(7))));
+        return batch;
+    }
+
+    @Test
+    void create_should_select_only_directories_of_which_the_latest_job_succeeded() throws Exception {
+        var succeeded = batch("succeeded");
+        var failed = batch("failed");
+        var retried = batch("retried");
+        var running = batch("running");
+        var jobs = List.of(
+            job("1", succeeded, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("2", failed, "FAILED", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("3", retried, "FAILED", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("4", retried, "SUCCESS", NOW.minusSeconds(400), NOW.minusSeconds(300)),
+            job("5", running, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("6", running, "RUNNING", NOW.minusSeconds(100), null),
+            job("7", tempDir.resolve("deleted-already"), "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("8", Path.of("/outside/the/import/area"), "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 0, Duration.ZERO, NOW);
+
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(retried, succeeded);
+        assertThat(plan.getKept()).isEmpty();
+    }
+
+    @Test
+    void create_should_keep_the_most_recent_and_too_recent_directories() throws Exception {
+        var oldest = batch("oldest");
+        var older = batch("older");
+        var recent = batch("recent");
+        var newest = batch("newest");
+        var jobs = List.of(
+            job("1", oldest, "SUCCESS", null, NOW.minus(Duration.ofHours(48))),
+            job("2", older, "SUCCESS", null, NOW.minus(Duration.ofHours(30))),
+            job("3", recent, "SUCCESS", null, NOW.minus(Duration.ofHours(2))),
+            job("4", newest, "SUCCESS", null, NOW.minus(Duration.ofHours(1))));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 1, Duration.ofHours(24), NOW);
+
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(older, oldest);
+        assertThat(plan.getKept()).extracting(Candidate::getPath).containsExactly(newest, recent);
+    }
+
+    @Test
+    void create_should_not_select_directories_inside_another_selected_directory() throws Exception {
+        var object = batch("batch/object");
+        var batch = batch("batch");
+        // Comes between batch and batch/object when the complete paths are compared
+        var sibling = batch("batch-1");
+        var jobs = List.of(
+            job("1", object, "SUCCESS", null, NOW.minusSeconds(60)),
+            job("2", batch, "SUCCESS", null, NOW.minusSeconds(30)),
+            job("3", tempDir, "SUCCESS", null, NOW.minusSeconds(30)),
+            job("4", sibling, "SUCCESS", null, NOW.minusSeconds(90)));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 0, Duration.ZERO, NOW);
+
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(batch, sibling);
+    }
+
+    @Test
+    void create_should_not_select_directories_modified_after_their_job_finished() throws Exception {
+        var imported = batch("imported");
+        var restaged = batch("restaged");
+        Files.setLastModifiedTime(restaged, FileTime.from(NOW.minusSeconds(100)));
+        var jobs = List.of(
+            job("1", imported, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("2", restaged, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 0, Duration.ZERO, NOW);
+
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(imported);
+        assertThat(plan.getKept()).isEmpty();
+    }
+
+    @Test
+    void create_should_not_select_directories_that_contain_data_that_was_not_imported() throws Exception {
+        var failedObject = batch("failed/object");
+        var failed = batch("failed");
+        var runningObject = batch("running/object");
+        var running = batch("running");
+        var importedObject = batch("imported/object");
+        var imported = batch("imported");
+        var jobs = List.of(
+            job("1", failed, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("2", failedObject, "FAILED", NOW.minusSeconds(400), NOW.minusSeconds(300)),
+            job("3", running, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("4", runningObject, "RUNNING", NOW.minusSeconds(400), null),
+            job("5", imported, "SUCCESS", NOW.minusSeconds(600), NOW.minusSeconds(500)),
+            job("6", importedObject, "SUCCESS", NOW.minusSeconds(400), NOW.minusSeconds(300)));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 0, Duration.ZERO, NOW);
+
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(imported);
+        assertThat(plan.getKept()).isEmpty();
+    }
+
+    @Test
+    void create_should_not_select_directories_changed_deep_inside_after_their_job_finished() throws Exception {
+        var imported = batch("imported");
+        var restaged = batch("restaged");
+        for (var batch : List.of(imported, restaged)) {
+            var version = Files.createDirectories(batch.resolve("object/v1"));
+            Files.writeString(version.resolve("file.txt"), "content");
+        }
+        Thread.sleep(50);
+        var finished = Instant.now();
+        Thread.sleep(50);
+        // Staged again the way copy-batch does it, with the modification times of the source
+        var version = restaged.resolve("object/v1");
+        var oldTime = FileTime.from(finished.minus(Duration.ofDays(7)));
+        Files.writeString(version.resolve("added.txt"), "content");
+        Files.setLastModifiedTime(version.resolve("added.txt"), oldTime);
+        Files.setLastModifiedTime(version, oldTime);
+        var jobs = List.of(
+            job("1", imported, "SUCCESS", finished.minusSeconds(60), finished),
+            job("2", restaged, "SUCCESS", finished.minusSeconds(60), finished));
+
+        var plan = CleanupPlan.create(jobs, tempDir, 0, Duration.ZERO, finished);
+
+        assertThat(Files.getLastModifiedTime(restaged).toInstant()).isLessThan(finished);
+        assertThat(plan.getToDelete()).extracting(Candidate::getPath).containsExactly(imported);
+    }
+}
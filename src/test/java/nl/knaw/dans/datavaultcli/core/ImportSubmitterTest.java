@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.api.ImportCommandDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import nl.knaw.dans.datavaultcli.core.ImportSubmitter.Submission;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportSubmitterTest {
+    private final DefaultApi api = Mockito.mock(DefaultApi.class);
+    private final List<Submission> reported = new CopyOnWriteArrayList<>();
+
+    private List<Submission> submit(int retries, Path... paths) throws Exception {
+        try (var submitter = new ImportSubmitter(api, 2, true, retries, Duration.ofMillis(10), reported::add)) {
+            for (var path : paths) {
+                submitter.submit(path);
+            }
+        }
+        return reported;
+    }
+
+    @Test
+    void submit_should_report_the_id_of_the_submitted_job() throws Exception {
+        var id = UUID.randomUUID();
+        when(api.importsPost(any(ImportCommandDto.class))).thenReturn(new ImportJobStatusDto().id(id));
+
+        var submissions = submit(3, Path.of("object"));
+
+        assertThat(submissions).hasSize(1);
+        assertThat(submissions.get(0).isSuccessful()).isTrue();
+        assertThat(submissions.get(0).getJobId()).isEqualTo(id);
+        assertThat(submissions.get(0).getAttempts()).isEqualTo(1);
+        assertThat(submissions.get(0).getPath()).isEqualTo(Path.of("object"));
+    }
+
+    @Test
+    void submit_should_retry_if_the_service_is_overloaded() throws Exception {
+        var id = UUID.randomUUID();
+        when(api.importsPost(any(ImportCommandDto.class)))
+            .thenThrow(new ApiException(429, "Too Many Requests"))
+            .thenReturn(new ImportJobStatusDto().id(id));
+
+        var submissions = submit(3, Path.of("object"));
+
+        assertThat(submissions.get(0).getJobId()).isEqualTo(id);
+        assertThat(submissions.get(0).getAttempts()).isEqualTo(2);
+        verify(api, times(2)).importsPost(any(ImportCommandDto.class));
+    }
+
+    @Test
+    void submit_should_retry_a_server_error_until_the_retries_are_used_up() throws Exception {
+        when(api.importsPost(any(ImportCommandDto.class))).thenThrow(new ApiException(503, "Service Unavailable"));
+
+        var submissions = submit(2, Path.of("object"));
+
+        assertThat(submissions.get(0).isSuccessful()).isFalse();
+        assertThat(submissions.get(0).getError()).isEqualTo("Service Unavailable");
+        assertThat(submissions.get(0).getAttempts()).isEqualTo(3);
+        verify(api, times(3)).importsPost(any(ImportCommandDto.class));
+    }
+
+    @Test
+    void submit_should_retry_if_no_response_was_received() throws Exception {
+        var id = UUID.randomUUID();
+        when(api.importsPost(any(ImportCommandDto.class)))
+            .thenThrow(new ApiException(0, "Connection refused"))
+            .thenReturn(new ImportJobStatusDto().id(id));
+
+        var submissions = submit(1, Path.of("object"));
+
+        assertThat(submissions.get(0).getJobId()).isEqualTo(id);
+        assertThat(submissions.get(0).getAttempts()).isEqualTo(2);
+    }
+
+    @Test
+    void submit_should_not_retry_a_client_error() throws Exception {
+        when(api.importsPost(any(ImportCommandDto.class))).thenThrow(new ApiException(400, "Bad Request"));
+
+        var submissions = submit(3, Path.of("object"));
+
+        assertThat(submissions.get(0).isSuccessful()).isFalse();
+        assertThat(submissions.get(0).getError()).isEqualTo("Bad Request");
+        assertThat(submissions.get(0).getAttempts()).isEqualTo(1);
+        verify(api, times(1)).importsPost(any(ImportCommandDto.class));
+    }
+
+    @Test
+    void submit_should_continue_with_the_other_paths_after_a_failure() throws Exception {
+        when(api.importsPost(any(ImportCommandDto.class)))
+            .thenAnswer(invocation -> {
+                ImportCommandDto command = invocation.getArgument(0);
+                if (command.getPath().endsWith("bad")) {
+                    throw new ApiException(404, "Not Found");
+                }
+                return new ImportJobStatusDto().id(UUID.randomUUID());
+            });
+
+        var submissions = submit(3, Path.of("good-1"), Path.of("bad"), Path.of("good-2"));
+
+        assertThat(submissions).hasSize(3);
+        assertThat(submissions.stream().filter(Submission::isSuccessful).map(Submission::getPath).toList())
+            .containsExactlyInAnyOrder(Path.of("good-1"), Path.of("good-2"));
+        assertThat(submissions.stream().filter(submission -> !submission.isSuccessful()).map(Submission::getPath).toList())
+            .containsExactly(Path.of("bad"));
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto;
+import nl.knaw.dans.datavaultcli.api.ImportJobStatusDto.StatusEnum;
+import nl.knaw.dans.datavaultcli.client.ApiException;
+import nl.knaw.dans.datavaultcli.client.DefaultApi;
+import nl.knaw.dans.datavaultcli.core.ImportWaiter.JobOutcome;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportWaiterTest {
+    private final DefaultApi api = Mockito.mock(DefaultApi.class);
+    private final List<JobOutcome> reported = new CopyOnWriteArrayList<>();
+
+    private ImportWaiter waiter(long initialMillis, long maxMillis) {
+        return new ImportWaiter(api, Duration.ofMillis(initialMillis), Duration.ofMillis(maxMillis));
+    }
+
+    private ImportJobStatusDto job(UUID id, StatusEnum status) {
+        return new ImportJobStatusDto().id(id).status(status);
+    }
+
+    @Test
+    void waitFor_should_return_when_all_jobs_have_finished() throws Exception {
+        var id1 = UUID.randomUUID();
+        var id2 = UUID.randomUUID();
+        when(api.importsIdGet(id1)).thenReturn(job(id1, StatusEnum.RUNNING), job(id1, StatusEnum.SUCCESS));
+        when(api.importsIdGet(id2)).thenReturn(job(id2, StatusEnum.PENDING), job(id2, StatusEnum.RUNNING), job(id2, StatusEnum.SUCCESS));
+
+        var outcomes = waiter(10, 20).waitFor(List.of(id1, id2), null, reported::add);
+
+        assertThat(outcomes).extracting(JobOutcome::getId, JobOutcome::isSuccessful, JobOutcome::isFinished)
+            .containsExactly(tuple(id1, true, true), tuple(id2, true, true));
+        assertThat(reported).extracting(JobOutcome::getId).containsExactly(id1, id2);
+    }
+
+    @Test
+    void waitFor_should_report_failed_and_unknown_jobs_as_finished_but_not_successful() throws Exception {
+        var failed = UUID.randomUUID();
+        var unknown = UUID.randomUUID();
+        when(api.importsIdGet(failed)).thenReturn(job(failed, StatusEnum.FAILED).message("Invalid object"));
+        when(api.importsIdGet(unknown)).thenThrow(new ApiException(404, "Not Found"));
+
+        var outcomes = waiter(10, 20).waitFor(List.of(failed, unknown), null, reported::add);
+
+        assertThat(outcomes).extracting(JobOutcome::getStatus, JobOutcome::getMessage, JobOutcome::isFinished, JobOutcome::isSuccessful)
+            .containsExactly(
+                tuple("FAILED", "Invalid object", true, false),
+                tuple(null, "job not found", true, false));
+        assertThat(reported).hasSize(2);
+    }
+
+    @Test
+    void waitFor_should_keep_polling_after_a_server_error() throws Exception {
+        var id = UUID.randomUUID();
+        when(api.importsIdGet(id)).thenThrow(new ApiException(503, "Service Unavailable")).thenReturn(job(id, StatusEnum.SUCCESS));
+
+        var outcomes = waiter(10, 20).waitFor(List.of(id), null, reported::add);
+
+        assertThat(outcomes.get(0).isSuccessful()).isTrue();
+    }
+
+    @Test
+    void waitFor_should_return_unfinished_jobs_when_the_timeout_expires() throws Exception {
+        var id = UUID.randomUUID();
+        when(api.importsIdGet(id)).thenReturn(job(id, StatusEnum.RUNNING));
+
+        var start = System.nanoTime();
+        var outcomes = waiter(10, 20).waitFor(List.of(id), Duration.ofMillis(100), reported::add);
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(outcomes).extracting(JobOutcome::getStatus, JobOutcome::isFinished).containsExactly(tuple("RUNNING", false));
+        assertThat(reported).isEmpty();
+        assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(100));
+    }
+
+    @Test
+    void waitFor_should_return_when_the_timeout_expires_before_all_jobs_were_added() throws Exception {
+        var ids = new ConcurrentLinkedQueue<UUID>();
+
+        var outcomes = waiter(10, 20).waitFor(ids, () -> false, Duration.ofMillis(50), reported::add);
+
+        assertThat(outcomes).isEmpty();
+    }
+
+    @Test
+    void waitFor_should_wait_for_jobs_that_are_added_while_waiting() throws Exception {
+        var id = UUID.randomUUID();
+        var ids = new ConcurrentLinkedQueue<UUID>();
+        var polls = new ArrayList<Integer>();
+        when(api.importsIdGet(id)).thenReturn(job(id, StatusEnum.SUCCESS));
+
+        var outcomes = waiter(10, 20).waitFor(ids, () -> {
+            polls.add(polls.size());
+            if (polls.size() == 3) {
+                ids.add(id);
+            }
+            return polls.size() > 3;
+        }, null, reported::add);
+
+        assertThat(outcomes).extracting(JobOutcome::getId).containsExactly(id);
+        assertThat(reported).extracting(JobOutcome::getId).containsExactly(id);
+    }
+
+    @Test
+    void waitFor_should_poll_less_often_up_to_the_maximum_interval() throws Exception {
+        var id = UUID.randomUUID();
+        var times = new CopyOnWriteArrayList<Long>();
+        when(api.importsIdGet(id)).thenAnswer(invocation -> {
+            times.add(System.nanoTime());
+            return job(id, times.size() < 8 ? StatusEnum.RUNNING : StatusEnum.SUCCESS);
+        });
+
+        waiter(20, 50).waitFor(List.of(id), null, reported::add);
+
+        var gaps = new ArrayList<Duration>();
+        for (int i = 1; i < times.size(); i++) {
+            gaps.add(Duration.ofNanos(times.get(i) - times.get(i - 1)));
+        }
+        // 20 ms, growing by half after every poll: 30, 45 and then capped at 50
+        assertThat(gaps).hasSize(7);
+        assertThat(gaps.get(0)).isGreaterThanOrEqualTo(Duration.ofMillis(20));
+        assertThat(gaps.get(1)).isGreaterThanOrEqualTo(Duration.ofMillis(30));
+        assertThat(gaps.get(2)).isGreaterThanOrEqualTo(Duration.ofMillis(45));
+        for (var gap : gaps.subList(3, gaps.size())) {
+            assertThat(gap).isGreaterThanOrEqualTo(Duration.ofMillis(50));
+        }
+        // Without the cap, the last interval would be more than 200 ms
+        assertThat(gaps.get(6)).isLessThan(Duration.ofMillis(150));
+    }
+
+    @Test
+    void waitFor_should_request_all_jobs_at_once_if_many_are_unfinished() throws Exception {
+        var ids = new ArrayList<UUID>();
+        var jobs = new ArrayList<ImportJobStatusDto>();
+        for (int i = 0; i < 20; i++) {
+            var id = UUID.randomUUID();
+            ids.add(id);
+            jobs.add(job(id, StatusEnum.SUCCESS));
+        }
+        jobs.add(job(UUID.randomUUID(), StatusEnum.RUNNING));
+        when(api.importsGet()).thenReturn(jobs);
+
+        var outcomes = waiter(10, 20).waitFor(ids, null, reported::add);
+
+        assertThat(outcomes).extracting(JobOutcome::getId).containsExactlyElementsOf(ids);
+        assertThat(outcomes.stream().allMatch(JobOutcome::isSuccessful)).isTrue();
+        verify(api, never()).importsIdGet(any(UUID.class));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JobFilterTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T12:00:00Z");
+
+    private JobRecord job(String path, String status, Instant created) {
+        return new JobRecord("1", path, status, null, created, null, null);
+    }
+
+    @Test
+    void test_should_select_every_job_if_no_criteria_are_set() {
+        var filter = JobFilter.builder().build();
+
+        assertThat(filter.test(job("/a", "RUNNING", null))).isTrue();
+        assertThat(filter.test(job(null, null, null))).isTrue();
+    }
+
+    @Test
+    void test_should_select_jobs_by_status() {
+        var filter = JobFilter.builder().states(Set.of("FAILED", "RUNNING")).build();
+
+        assertThat(filter.test(job("/a", "FAILED", T0))).isTrue();
+        assertThat(filter.test(job("/a", "RUNNING", T0))).isTrue();
+        assertThat(filter.test(job("/a", "SUCCESS", T0))).isFalse();
+        assertThat(filter.test(job("/a", null, T0))).isFalse();
+    }
+
+    @Test
+    void test_should_select_jobs_created_at_or_after_since_and_before_until() {
+        var filter = JobFilter.builder().since(T0).until(T0.plusSeconds(60)).build();
+
+        assertThat(filter.test(job("/a", "SUCCESS", T0.minusSeconds(1)))).isFalse();
+        assertThat(filter.test(job("/a", "SUCCESS", T0))).isTrue();
+        assertThat(filter.test(job("/a", "SUCCESS", T0.plusSeconds(59)))).isTrue();
+        assertThat(filter.test(job("/a", "SUCCESS", T0.plusSeconds(60)))).isFalse();
+    }
+
+    @Test
+    void test_should_select_jobs_by_path_prefix() {
+        var filter = JobFilter.builder().pathPrefix("/import/batch-1").build();
+
+        assertThat(filter.test(job("/import/batch-1/object", "SUCCESS", T0))).isTrue();
+        assertThat(filter.test(job("/import/batch-2/object", "SUCCESS", T0))).isFalse();
+        assertThat(filter.test(job(null, "SUCCESS", T0))).isFalse();
+    }
+
+    @Test
+    void test_should_require_all_criteria_to_match() {
+        var filter = JobFilter.builder().states(Set.of("SUCCESS")).since(T0).pathPrefix("/import").build();
+
+        assertThat(filter.test(job("/import/a", "SUCCESS", T0))).isTrue();
+        assertThat(filter.test(job("/import/a", "FAILED", T0))).isFalse();
+        assertThat(filter.test(job("/import/a", "SUCCESS", T0.minusSeconds(1)))).isFalse();
+        assertThat(filter.test(job("/other/a", "SUCCESS", T0))).isFalse();
+    }
+
+    @Test
+    void test_should_fail_on_a_job_without_creation_time_if_a_time_range_is_set() {
+        var filter = JobFilter.builder().since(T0).build();
+
+        assertThat(filter.hasTimeRange()).isTrue();
+        assertThatThrownBy(() -> filter.test(job("/a", "SUCCESS", null)))
+            .isInstanceOf(IllegalStateException.class)
+            .hasMessageContaining("creation time of job 1");
+    }
+
+    @Test
+    void test_should_not_need_the_creation_time_without_a_time_range() {
+        var filter = JobFilter.builder().states(Set.of("SUCCESS")).build();
+
+        assertThat(filter.hasTimeRange()).isFalse();
+        assertThat(filter.test(job("/a", "SUCCESS", null))).isTrue();
+    }
+}
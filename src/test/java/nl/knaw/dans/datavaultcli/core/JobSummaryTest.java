@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobSummaryTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T12:00:00Z");
+
+    private JobRecord job(String status, Instant created, Instant finished) {
+        return new JobRecord("1", "/a", status, null, created, finished, null);
+    }
+
+    @Test
+    void add_should_count_jobs_per_status() {
+        var summary = new JobSummary();
+        summary.add(job("SUCCESS", null, null));
+        summary.add(job("FAILED", null, null));
+        summary.add(job("SUCCESS", null, null));
+        summary.add(job(null, null, null));
+
+        assertThat(summary.getJobs()).isEqualTo(4);
+        assertThat(summary.getCounts()).isEqualTo(Map.of("FAILED", 1L, "SUCCESS", 2L, "UNKNOWN", 1L));
+    }
+
+    @Test
+    void add_should_compute_min_average_and_max_duration_of_finished_jobs() {
+        var summary = new JobSummary();
+        summary.add(job("SUCCESS", T0, T0.plusSeconds(10)));
+        summary.add(job("FAILED", T0, T0.plusSeconds(30)));
+        summary.add(job("SUCCESS", T0, T0.plusSeconds(50)));
+
+        assertThat(summary.getTimedJobs()).isEqualTo(3);
+        assertThat(summary.getMinDuration()).isEqualTo(Duration.ofSeconds(10));
+        assertThat(summary.getAverageDuration()).isEqualTo(Duration.ofSeconds(30));
+        assertThat(summary.getMaxDuration()).isEqualTo(Duration.ofSeconds(50));
+    }
+
+    @Test
+    void add_should_not_time_unfinished_jobs_or_jobs_without_timestamps() {
+        var summary = new JobSummary();
+        summary.add(job("RUNNING", T0, T0.plusSeconds(10)));
+        summary.add(job("SUCCESS", null, T0.plusSeconds(10)));
+        summary.add(job("SUCCESS", T0, null));
+
+        assertThat(summary.getJobs()).isEqualTo(3);
+        assertThat(summary.getTimedJobs()).isEqualTo(0);
+        assertThat(summary.getMinDuration()).isNull();
+        assertThat(summary.getAverageDuration()).isNull();
+        assertThat(summary.getMaxDuration()).isNull();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.core.JobTracker.Change;
+import nl.knaw.dans.datavaultcli.core.JobTracker.ChangeType;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class JobTrackerTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T12:00:00Z");
+
+    private JobRecord job(String id, String status) {
+        // Created long before the polls, so that the elapsed time cannot be mistaken for the age of the job
+        return new JobRecord(id, "/import/" + id, status, null, T0.minus(Duration.ofHours(1)), null, null);
+    }
+
+    @Test
+    void update_should_report_added_changed_and_removed_jobs() {
+        var tracker = new JobTracker(Duration.ofMinutes(5));
+
+        var first = tracker.update(List.of(job("1", "PENDING"), job("2", "RUNNING"), job("3", "SUCCESS")), T0);
+        var second = tracker.update(List.of(job("1", "RUNNING"), job("2", "SUCCESS"), job("4", "PENDING")), T0.plusSeconds(10));
+
+        assertThat(first).extracting(Change::getType, change -> change.getJob().getId())
+            .containsExactlyInAnyOrder(tuple(ChangeType.ADDED, "1"), tuple(ChangeType.ADDED, "2"));
+        assertThat(second).extracting(Change::getType, change -> change.getJob().getId())
+            .containsExactlyInAnyOrder(tuple(ChangeType.CHANGED, "1"), tuple(ChangeType.REMOVED, "2"), tuple(ChangeType.ADDED, "4"));
+    }
+
+    @Test
+    void getElapsed_should_measure_the_time_in_the_current_status() {
+        var tracker = new JobTracker(Duration.ofMinutes(5));
+
+        tracker.update(List.of(job("1", "PENDING"), job("2", "PENDING")), T0);
+        tracker.update(List.of(job("1", "RUNNING"), job("2", "PENDING")), T0.plusSeconds(30));
+        tracker.update(List.of(job("1", "RUNNING"), job("2", "PENDING")), T0.plusSeconds(60));
+
+        assertThat(tracker.getVisibleJobs()).extracting(tracked -> tracked.getJob().getId(), tracked -> tracked.getElapsed(T0.plusSeconds(90)))
+            .containsExactlyInAnyOrder(tuple("1", Duration.ofSeconds(60)), tuple("2", Duration.ofSeconds(90)));
+    }
+
+    @Test
+    void getJobsPerMinute_should_count_the_jobs_that_finished_after_the_first_poll() {
+        var tracker = new JobTracker(Duration.ofMinutes(5));
+
+        tracker.update(List.of(job("1", "RUNNING"), job("2", "RUNNING"), job("3", "FAILED")), T0);
+        tracker.update(List.of(job("1", "SUCCESS"), job("2", "FAILED"), job("3", "FAILED")), T0.plusSeconds(60));
+
+        assertThat(tracker.getJobsPerMinute(T0.plusSeconds(120))).isEqualTo(1.0);
+        assertThat(tracker.getCounts()).containsEntry("FAILED", 2L).containsEntry("SUCCESS", 1L);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParallelTreeWalkerTest {
+    @TempDir
+    Path tempDir;
+
+    private static class CountingVisitor implements ParallelTreeWalker.Visitor {
+        final AtomicInteger files = new AtomicInteger();
+        final Set<Path> completedDirectories = ConcurrentHashMap.newKeySet();
+        final AtomicInteger directoriesCompletedBeforeParent = new AtomicInteger();
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, PosixFileAttributes attrs) {
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public void visitFile(Path file, PosixFileAttributes attrs) {
+            files.incrementAndGet();
+        }
+
+        @Override
+        public void postVisitDirectory(Path dir, PosixFileAttributes attrs) {
+            completedDirectories.add(dir);
+            if (dir.getParent() != null && !completedDirectories.contains(dir.getParent())) {
+                directoriesCompletedBeforeParent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Visits the files of one directory, of which the first in directory order is slow to visit. When a file is visited, the walker has read all entries up to it and cannot have
+     * released the oldest entry that is not complete yet, so the entries from that one up to the visited file are all pending. The largest such range seen is a lower bound of
+     * the largest number of pending entries.
+     */
+    private static class PendingEntriesVisitor extends CountingVisitor {
+        private final Map<Path, Integer> order = new HashMap<>();
+        private final AtomicIntegerArray completed;
+        private final long firstVisitMillis;
+        final AtomicInteger maxPending = new AtomicInteger();
+
+        PendingEntriesVisitor(Path dir, long firstVisitMillis) throws IOException {
+            try (var entries = Files.newDirectoryStream(dir)) {
+                for (var entry : entries) {
+                    order.put(entry, order.size());
+                }
+            }
+            this.completed = new AtomicIntegerArray(order.size());
+            this.firstVisitMillis = firstVisitMillis;
+        }
+
+        @Override
+        public void visitFile(Path file, PosixFileAttributes attrs) {
+            int index = order.get(file);
+            int oldestIncomplete = 0;
+            while (completed.get(oldestIncomplete) == 1) {
+                oldestIncomplete++;
+            }
+            maxPending.accumulateAndGet(index - oldestIncomplete + 1, Math::max);
+            if (index == 0) {
+                try {
+                    Thread.sleep(firstVisitMillis);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.visitFile(file, attrs);
+            completed.set(index, 1);
+        }
+    }
+
+    private Path createFiles(int count) throws IOException {
+        var dir = Files.createDirectories(tempDir.resolve("large"));
+        for (int i = 0; i < count; i++) {
+            Files.createFile(dir.resolve("file" + i));
+        }
+        return dir;
+    }
+
+    @Test
+    void walk_should_visit_every_file_and_directory() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            var dir = Files.createDirectories(tempDir.resolve("object" + i).resolve("v1").resolve("data"));
+            for (int j = 0; j < 20; j++) {
+                Files.createFile(dir.resolve("file" + j));
+            }
+        }
+        var visitor = new CountingVisitor();
+
+        new ParallelTreeWalker(4).walk(tempDir, visitor);
+
+        assertThat(visitor.files.get()).isEqualTo(400);
+        assertThat(visitor.completedDirectories).hasSize(61);
+        assertThat(visitor.directoriesCompletedBeforeParent.get()).isEqualTo(61);
+    }
+
+    @Test
+    void walk_should_visit_every_entry_of_directories_larger_than_the_pending_limit() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            var dir = Files.createDirectories(tempDir.resolve("dir" + i));
+            for (int j = 0; j < 2_000; j++) {
+                Files.createFile(dir.resolve("file" + j));
+            }
+        }
+        var visitor = new CountingVisitor();
+
+        new ParallelTreeWalker(2, 32).walk(tempDir, visitor);
+
+        assertThat(visitor.files.get()).isEqualTo(8_000);
+        assertThat(visitor.completedDirectories).hasSize(5);
+    }
+
+    @Test
+    void walk_should_keep_at_most_the_default_number_of_entries_pending() throws Exception {
+        var dir = createFiles(5 * ParallelTreeWalker.DEFAULT_MAX_PENDING_ENTRIES);
+        var visitor = new PendingEntriesVisitor(dir, 500);
+
+        new ParallelTreeWalker(4).walk(dir, visitor);
+
+        assertThat(visitor.files.get()).isEqualTo(5 * ParallelTreeWalker.DEFAULT_MAX_PENDING_ENTRIES);
+        assertThat(visitor.maxPending.get()).isLessThanOrEqualTo(ParallelTreeWalker.DEFAULT_MAX_PENDING_ENTRIES);
+    }
+
+    @Test
+    void walk_should_keep_at_most_the_given_number_of_entries_pending() throws Exception {
+        var dir = createFiles(400);
+        var visitor = new PendingEntriesVisitor(dir, 200);
+
+        new ParallelTreeWalker(4, 8).walk(dir, visitor);
+
+        assertThat(visitor.files.get()).isEqualTo(400);
+        // The other threads visit the entries after the slow one until the limit is reached
+        assertThat(visitor.maxPending.get()).isEqualTo(8);
+    }
+
+    @Test
+    void walk_should_not_follow_symbolic_links() throws Exception {
+        var dir = Files.createDirectories(tempDir.resolve("object/v1"));
+        Files.createFile(dir.resolve("file"));
+        Files.createSymbolicLink(dir.resolve("cycle"), tempDir.resolve("object"));
+        Files.createSymbolicLink(dir.resolve("dangling"), tempDir.resolve("missing"));
+        Set<Path> links = ConcurrentHashMap.newKeySet();
+        var visitor = new CountingVisitor() {
+
+            @Override
+            public void visitFile(Path file, PosixFileAttributes attrs) {
+                super.visitFile(file, attrs);
+                if (attrs.isSymbolicLink()) {
+                    links.add(file);
+                }
+            }
+        };
+
+        new ParallelTreeWalker(4).walk(tempDir, visitor);
+
+        assertThat(visitor.files.get()).isEqualTo(3);
+        assertThat(links).containsExactlyInAnyOrder(dir.resolve("cycle"), dir.resolve("dangling"));
+        assertThat(visitor.completedDirectories).hasSize(3);
+    }
+}
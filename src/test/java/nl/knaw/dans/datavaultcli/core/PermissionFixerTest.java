@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PermissionFixerTest {
+    @TempDir
+    Path tempDir;
+
+    private final PermissionFixer fixer = new PermissionFixer(4, PosixFilePermissions.fromString("rw-r-----"), PosixFilePermissions.fromString("rwxr-x---"));
+
+    @Test
+    void fix_should_set_the_permissions_of_files_and_directories() throws Exception {
+        var root = Files.createDirectories(tempDir.resolve("root"));
+        var dir = Files.createDirectories(root.resolve("object/v1"));
+        var file = Files.writeString(dir.resolve("file.txt"), "content");
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+
+        fixer.fix(root);
+
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(root))).isEqualTo("rwxr-x---");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(dir))).isEqualTo("rwxr-x---");
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(file))).isEqualTo("rw-r-----");
+    }
+
+    @Test
+    void fix_should_leave_entries_that_already_have_the_right_permissions_alone() throws Exception {
+        var root = Files.createDirectories(tempDir.resolve("root"));
+        Files.setPosixFilePermissions(root, PosixFilePermissions.fromString("rwxr-x---"));
+        var unchanged = Files.writeString(root.resolve("unchanged.txt"), "content");
+        Files.setPosixFilePermissions(unchanged, PosixFilePermissions.fromString("rw-r-----"));
+        var changed = Files.writeString(root.resolve("changed.txt"), "content");
+        Files.setPosixFilePermissions(changed, PosixFilePermissions.fromString("rw-------"));
+        var ctime = (FileTime) Files.getAttribute(unchanged, "unix:ctime");
+        // Make sure that a change of the permissions would give a different ctime
+        Thread.sleep(20);
+
+        var result = fixer.fix(root);
+
+        assertThat(result.getEntries()).isEqualTo(3);
+        assertThat(result.getChanged()).isEqualTo(1);
+        assertThat(Files.getAttribute(unchanged, "unix:ctime")).isEqualTo(ctime);
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(changed))).isEqualTo("rw-r-----");
+    }
+
+    @Test
+    void fix_should_skip_symbolic_links() throws Exception {
+        var outside = Files.writeString(tempDir.resolve("outside.txt"), "content");
+        Files.setPosixFilePermissions(outside, PosixFilePermissions.fromString("rw-------"));
+        var root = Files.createDirectories(tempDir.resolve("root"));
+        Files.setPosixFilePermissions(root, PosixFilePermissions.fromString("rwxr-x---"));
+        var link = Files.createSymbolicLink(root.resolve("link.txt"), outside);
+
+        var result = fixer.fix(root);
+
+        assertThat(result.getEntries()).isEqualTo(1);
+        assertThat(result.getChanged()).isEqualTo(0);
+        assertThat(Files.isSymbolicLink(link)).isTrue();
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(outside, LinkOption.NOFOLLOW_LINKS))).isEqualTo("rw-------");
+    }
+}
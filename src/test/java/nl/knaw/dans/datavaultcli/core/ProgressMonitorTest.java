@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import nl.knaw.dans.datavaultcli.core.ProgressMonitor.Progress;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ProgressMonitorTest {
+    private static final Instant T0 = Instant.parse("2024-05-01T12:00:00Z");
+
+    // Long enough for the scheduled reports never to interfere with the test
+    private static final Duration INTERVAL = Duration.ofHours(1);
+
+    private static class FakeClock extends Clock {
+        private Instant now = T0;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @Test
+    void getProgress_should_compute_the_current_and_average_rate_and_the_time_remaining() {
+        var clock = new FakeClock();
+        var statistics = new CopyStatistics();
+        var monitor = new ProgressMonitor(new BatchScan(10, 2, 10_000), statistics, INTERVAL, progress -> {}, clock);
+
+        clock.advance(Duration.ofSeconds(2));
+        statistics.bytesTransferred(2_000);
+        statistics.fileCopied(2_000);
+        var first = monitor.getProgress();
+        clock.advance(Duration.ofSeconds(2));
+        statistics.bytesTransferred(1_000);
+        statistics.fileUnchanged(1_000);
+        statistics.fileDeduplicated(1_000);
+        var second = monitor.getProgress();
+        monitor.close();
+
+        assertThat(first.getTimestamp()).isEqualTo(T0.plusSeconds(2));
+        assertThat(first.getFilesDone()).isEqualTo(1);
+        assertThat(first.getFilesTotal()).isEqualTo(10L);
+        assertThat(first.getBytesDone()).isEqualTo(2_000);
+        assertThat(first.getBytesTotal()).isEqualTo(10_000L);
+        assertThat(first.getCurrentBytesPerSecond()).isEqualTo(1_000);
+        assertThat(first.getAverageBytesPerSecond()).isEqualTo(1_000);
+        assertThat(first.getEtaSeconds()).isEqualTo(8L);
+
+        // The current rate covers the time since the previous report only
+        assertThat(second.getFilesDone()).isEqualTo(3);
+        assertThat(second.getBytesDone()).isEqualTo(5_000);
+        assertThat(second.getCurrentBytesPerSecond()).isEqualTo(1_500);
+        assertThat(second.getAverageBytesPerSecond()).isEqualTo(1_250);
+        assertThat(second.getEtaSeconds()).isEqualTo(4L);
+    }
+
+    @Test
+    void getProgress_should_leave_the_totals_and_time_remaining_unknown_without_a_scan() {
+        var clock = new FakeClock();
+        var statistics = new CopyStatistics();
+        var monitor = new ProgressMonitor(null, statistics, INTERVAL, progress -> {}, clock);
+
+        clock.advance(Duration.ofSeconds(1));
+        statistics.bytesTransferred(500);
+        var progress = monitor.getProgress();
+        monitor.close();
+
+        assertThat(progress.getFilesTotal()).isNull();
+        assertThat(progress.getBytesTotal()).isNull();
+        assertThat(progress.getEtaSeconds()).isNull();
+        assertThat(progress.getAverageBytesPerSecond()).isEqualTo(500);
+    }
+
+    @Test
+    void getProgress_should_not_divide_by_zero_when_no_time_has_passed() {
+        var monitor = new ProgressMonitor(new BatchScan(1, 1, 100), new CopyStatistics(), INTERVAL, progress -> {}, new FakeClock());
+
+        var progress = monitor.getProgress();
+        monitor.close();
+
+        assertThat(progress.getCurrentBytesPerSecond()).isEqualTo(0);
+        assertThat(progress.getAverageBytesPerSecond()).isEqualTo(0);
+        assertThat(progress.getEtaSeconds()).isNull();
+    }
+
+    @Test
+    void close_should_report_the_final_progress() {
+        var clock = new FakeClock();
+        var statistics = new CopyStatistics();
+        var reports = new ArrayList<Progress>();
+        var monitor = new ProgressMonitor(new BatchScan(1, 1, 100), statistics, INTERVAL, reports::add, clock);
+
+        clock.advance(Duration.ofSeconds(4));
+        statistics.bytesTransferred(100);
+        statistics.fileCopied(100);
+        monitor.close();
+
+        assertThat(reports).extracting(Progress::getFilesDone, Progress::getBytesDone, Progress::getAverageBytesPerSecond, Progress::getEtaSeconds)
+            .containsExactly(tuple(1L, 100L, 25L, 0L));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 DANS - Data Archiving and Networked Services (info@dans.knaw.nl)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.knaw.dans.datavaultcli.core;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ThrottleTest {
+    @TempDir
+    Path tempDir;
+
+    private Duration time(ThrowingRunnable runnable) throws Exception {
+        var start = System.nanoTime();
+        runnable.run();
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+
+    @Test
+    void acquireFile_should_not_wait_if_unlimited() throws Exception {
+        var throttle = Throttle.unlimited();
+
+        var elapsed = time(() -> {
+            for (int i = 0; i < 1000; i++) {
+                throttle.acquireFile();
+                throttle.acquireBytes(1_000_000);
+            }
+        });
+
+        assertThat(throttle.isBytesLimited()).isFalse();
+        assertThat(elapsed).isLessThan(Duration.ofMillis(500));
+    }
+
+    @Test
+    void acquireFile_should_limit_the_number_of_files_per_second() throws Exception {
+        var throttle = new Throttle(0, 20);
+
+        // The first file may start at once, each next one 50 ms later
+        var elapsed = time(() -> {
+            for (int i = 0; i < 11; i++) {
+                throttle.acquireFile();
+            }
+        });
+
+        assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(450));
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void acquireBytes_should_limit_the_number_of_bytes_per_second() throws Exception {
+        var throttle = new Throttle(100_000, 0);
+
+        var elapsed = time(() -> {
+            for (int i = 0; i < 6; i++) {
+                throttle.acquireBytes(10_000);
+            }
+        });
+
+        assertThat(throttle.isBytesLimited()).isTrue();
+        assertThat(elapsed).isGreaterThanOrEqualTo(Duration.ofMillis(450));
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void setMaxFilesPerSecond_should_lift_the_limit_when_set_to_0() throws Exception {
+        var throttle = new Throttle(0, 1);
+        throttle.acquireFile();
+        throttle.setMaxFilesPerSecond(0);
+
+        var elapsed = time(() -> {
+            for (int i = 0; i < 100; i++) {
+                throttle.acquireFile();
+            }
+        });
+
+        assertThat(elapsed).isLessThan(Duration.ofMillis(500));
+    }
+
+    @Test
+    void loadControlFile_should_set_the_limits_in_the_file() throws Exception {
+        var controlFile = Files.writeString(tempDir.resolve("throttle.properties"), Throttle.MAX_BYTES_PER_SECOND + " = 50MiB\n");
+        var throttle = Throttle.unlimited();
+
+        throttle.loadControlFile(controlFile);
+
+        assertThat(throttle.isBytesLimited()).isTrue();
+    }
+
+    @Test
+    void loadControlFile_should_fail_on_a_missing_file_or_an_invalid_limit() throws Exception {
+        var throttle = Throttle.unlimited();
+        var invalid = Files.writeString(tempDir.resolve("invalid.properties"), Throttle.MAX_FILES_PER_SECOND + " = many\n");
+        var negative = Files.writeString(tempDir.resolve("negative.properties"), Throttle.MAX_FILES_PER_SECOND + " = -1\n");
+
+        assertThatThrownBy(() -> throttle.loadControlFile(tempDir.resolve("missing.properties"))).isInstanceOf(NoSuchFileException.class);
+        assertThatThrownBy(() -> throttle.loadControlFile(invalid)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> throttle.loadControlFile(negative)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void watchControlFile_should_read_the_file_again_when_it_changes() throws Exception {
+        var controlFile = Files.writeString(tempDir.resolve("throttle.properties"), Throttle.MAX_BYTES_PER_SECOND + " = 1MiB\n");
+        Files.setLastModifiedTime(controlFile, FileTime.from(Instant.now().minusSeconds(60)));
+        try (var throttle = Throttle.unlimited()) {
+            throttle.watchControlFile(controlFile);
+            assertThat(throttle.isBytesLimited()).isTrue();
+
+            // Without the key, the number of bytes is unlimited
+            Files.writeString(controlFile, Throttle.MAX_FILES_PER_SECOND + " = 100\n");
+            Files.setLastModifiedTime(controlFile, FileTime.from(Instant.now()));
+            for (int i = 0; i < 50 && throttle.isBytesLimited(); i++) {
+                Thread.sleep(100);
+            }
+
+            assertThat(throttle.isBytesLimited()).isFalse();
+        }
+    }
+}